@@ -0,0 +1,234 @@
+package model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import utility.Pixels;
+
+/**
+ * The kernels of {@link PixelKernels} on vectors of pixels, through the Java Vector API. The
+ * pixels that do not fill a whole vector at the end of a block are done one at a time.
+ *
+ * <p>The results are exactly those of {@link ScalarPixelKernels}. Sepia truncates every term
+ * with a multiplier and a shift that give the same value as the double weight for every channel
+ * value. Luma is worked out in fixed point, and the pixels whose sum is too close to a whole
+ * number for the fixed point to be trusted are done again in doubles. Convolution multiplies and
+ * adds in doubles in the same order as the scalar loop, never fusing the two.
+ */
+final class VectorPixelKernels extends PixelKernels {
+
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+  // Integers with as many lanes as DOUBLES, to be widened into doubles.
+  private static final VectorSpecies<Integer> HALF_INTS = VectorSpecies.of(int.class,
+          VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+  private static final int LUMA_SHIFT = 22;
+  private static final int LUMA_ONE = 1 << LUMA_SHIFT;
+
+  // The multipliers and shifts that truncate the terms of the sepia sums, by output channel and
+  // input channel.
+  private final int[][] sepiaMultipliers = new int[3][3];
+  private final int[][] sepiaShifts = new int[3][3];
+
+  private final int redLuma;
+  private final int greenLuma;
+  private final int blueLuma;
+  // How far the fixed-point luma sum may be from the double one.
+  private final int lumaGuard;
+
+  VectorPixelKernels() {
+    if (INTS.length() < 4 || DOUBLES.length() < 2) {
+      throw new UnsupportedOperationException("Vectors are too short to be worth using");
+    }
+
+    for (int i = 0; i <= 2; i++) {
+      for (int j = 0; j <= 2; j++) {
+        setSepiaTerm(i, j);
+      }
+    }
+
+    double[] weights = {0.2126, 0.7152, 0.0722};
+    int[] fixed = new int[3];
+    double error = 0.0;
+    for (int c = 0; c < 3; c++) {
+      fixed[c] = (int) Math.round(weights[c] * LUMA_ONE);
+      error += Math.abs(fixed[c] - weights[c] * LUMA_ONE);
+    }
+    redLuma = fixed[0];
+    greenLuma = fixed[1];
+    blueLuma = fixed[2];
+    lumaGuard = (int) Math.ceil(error * 255) + 1;
+  }
+
+  // Finds a multiplier and a shift for which (v * multiplier) >> shift gives the truncated term
+  // of a sepia weight for every channel value v.
+  private void setSepiaTerm(int i, int j) {
+    int[] terms = FixedPoint.truncatedTerms(SEPIA[i][j]);
+    for (int shift = 16; shift <= 22; shift++) {
+      int base = (int) Math.floor(SEPIA[i][j] * (1 << shift));
+      for (int multiplier = base; multiplier <= base + 2; multiplier++) {
+        boolean exact = true;
+        for (int v = 0; v < 256 && exact; v++) {
+          exact = (v * multiplier) >> shift == terms[v];
+        }
+        if (exact) {
+          sepiaMultipliers[i][j] = multiplier;
+          sepiaShifts[i][j] = shift;
+          return;
+        }
+      }
+    }
+    throw new UnsupportedOperationException("No exact multiplier for sepia weight "
+            + SEPIA[i][j]);
+  }
+
+  @Override
+  void brighten(int[] pixels, int length, int increment) {
+    int bound = INTS.loopBound(length);
+    int i = 0;
+    for (; i < bound; i += INTS.length()) {
+      IntVector rgb = IntVector.fromArray(INTS, pixels, i);
+      IntVector r = red(rgb).add(increment).max(0).min(255);
+      IntVector g = green(rgb).add(increment).max(0).min(255);
+      IntVector b = blue(rgb).add(increment).max(0).min(255);
+      pack(r, g, b).intoArray(pixels, i);
+    }
+    for (; i < length; i++) {
+      int r = Pixels.clamp(Pixels.red(pixels[i]) + increment);
+      int g = Pixels.clamp(Pixels.green(pixels[i]) + increment);
+      int b = Pixels.clamp(Pixels.blue(pixels[i]) + increment);
+      pixels[i] = Pixels.pack(r, g, b);
+    }
+  }
+
+  @Override
+  void sepia(int[] pixels, int length) {
+    int bound = INTS.loopBound(length);
+    int p = 0;
+    for (; p < bound; p += INTS.length()) {
+      IntVector rgb = IntVector.fromArray(INTS, pixels, p);
+      IntVector r = red(rgb);
+      IntVector g = green(rgb);
+      IntVector b = blue(rgb);
+      pack(sepiaChannel(0, r, g, b), sepiaChannel(1, r, g, b), sepiaChannel(2, r, g, b))
+              .intoArray(pixels, p);
+    }
+    for (; p < length; p++) {
+      int[] channels = {Pixels.red(pixels[p]), Pixels.green(pixels[p]), Pixels.blue(pixels[p])};
+      int[] sums = new int[3];
+      for (int i = 0; i <= 2; i++) {
+        for (int j = 0; j <= 2; j++) {
+          sums[i] += (channels[j] * sepiaMultipliers[i][j]) >> sepiaShifts[i][j];
+        }
+      }
+      pixels[p] = Pixels.pack(Pixels.clamp(sums[0]), Pixels.clamp(sums[1]),
+              Pixels.clamp(sums[2]));
+    }
+  }
+
+  // Works out one output channel of sepia, clamped to 255: the terms are never negative.
+  private IntVector sepiaChannel(int channel, IntVector r, IntVector g, IntVector b) {
+    int[] multipliers = sepiaMultipliers[channel];
+    int[] shifts = sepiaShifts[channel];
+    return r.mul(multipliers[0]).lanewise(VectorOperators.ASHR, shifts[0])
+            .add(g.mul(multipliers[1]).lanewise(VectorOperators.ASHR, shifts[1]))
+            .add(b.mul(multipliers[2]).lanewise(VectorOperators.ASHR, shifts[2]))
+            .min(255);
+  }
+
+  @Override
+  void lumaGrey(int[] pixels, int length) {
+    int bound = INTS.loopBound(length);
+    int i = 0;
+    for (; i < bound; i += INTS.length()) {
+      IntVector rgb = IntVector.fromArray(INTS, pixels, i);
+      IntVector sum = red(rgb).mul(redLuma).add(green(rgb).mul(greenLuma))
+              .add(blue(rgb).mul(blueLuma));
+      IntVector fraction = sum.and(LUMA_ONE - 1);
+      VectorMask<Integer> close = fraction.lt(lumaGuard)
+              .or(fraction.compare(VectorOperators.GT, LUMA_ONE - lumaGuard));
+      IntVector grey = sum.lanewise(VectorOperators.ASHR, LUMA_SHIFT);
+      pack(grey, grey, grey).intoArray(pixels, i);
+      if (close.anyTrue()) {
+        for (int lane = 0; lane < INTS.length(); lane++) {
+          if (close.laneIsSet(lane)) {
+            int value = AbstractImageManipulationsModel.luma(rgb.lane(lane));
+            pixels[i + lane] = Pixels.pack(value, value, value);
+          }
+        }
+      }
+    }
+    for (; i < length; i++) {
+      int grey = AbstractImageManipulationsModel.luma(pixels[i]);
+      pixels[i] = Pixels.pack(grey, grey, grey);
+    }
+  }
+
+  @Override
+  void correlate(double[][] kernel, int[] input, int offset, int stride, int count,
+                 double[] red, double[] green, double[] blue, int destination) {
+    int bound = DOUBLES.loopBound(count);
+    int x = 0;
+    for (; x < bound; x += DOUBLES.length()) {
+      DoubleVector r = DoubleVector.zero(DOUBLES);
+      DoubleVector g = DoubleVector.zero(DOUBLES);
+      DoubleVector b = DoubleVector.zero(DOUBLES);
+      for (int i = 0; i < kernel.length; i++) {
+        int base = offset + i * stride + x;
+        for (int j = 0; j < kernel[i].length; j++) {
+          double weight = kernel[i][j];
+          IntVector rgb = IntVector.fromArray(HALF_INTS, input, base + j);
+          r = r.add(toDoubles(red(rgb)).mul(weight));
+          g = g.add(toDoubles(green(rgb)).mul(weight));
+          b = b.add(toDoubles(blue(rgb)).mul(weight));
+        }
+      }
+      r.intoArray(red, destination + x);
+      g.intoArray(green, destination + x);
+      b.intoArray(blue, destination + x);
+    }
+    for (; x < count; x++) {
+      double r = 0.0;
+      double g = 0.0;
+      double b = 0.0;
+      for (int i = 0; i < kernel.length; i++) {
+        int base = offset + i * stride + x;
+        for (int j = 0; j < kernel[i].length; j++) {
+          double weight = kernel[i][j];
+          int rgb = input[base + j];
+          r += weight * Pixels.red(rgb);
+          g += weight * Pixels.green(rgb);
+          b += weight * Pixels.blue(rgb);
+        }
+      }
+      red[destination + x] = r;
+      green[destination + x] = g;
+      blue[destination + x] = b;
+    }
+  }
+
+  private static IntVector red(IntVector rgb) {
+    return rgb.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+  }
+
+  private static IntVector green(IntVector rgb) {
+    return rgb.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+  }
+
+  private static IntVector blue(IntVector rgb) {
+    return rgb.and(0xFF);
+  }
+
+  private static IntVector pack(IntVector r, IntVector g, IntVector b) {
+    return r.lanewise(VectorOperators.LSHL, 16).or(g.lanewise(VectorOperators.LSHL, 8)).or(b);
+  }
+
+  private static DoubleVector toDoubles(IntVector values) {
+    return (DoubleVector) values.convertShape(VectorOperators.I2D, DOUBLES, 0);
+  }
+}
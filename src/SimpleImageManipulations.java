@@ -2,6 +2,8 @@ import control.ExtendedImageManipulationsControllerImpl;
 import control.GUICommandCallbackController;
 import control.ImageManipulationsController;
 import model.ImageManipulationsModelFactory;
+import model.ImageRegistry;
+import model.ImageSession;
 import view.IView;
 import view.JFrameView;
 
@@ -53,6 +55,11 @@ public class SimpleImageManipulations {
       } else {
         throw new IllegalArgumentException("Invalid argument entered");
       }
+      // Report how the memory budget held up, when one was given.
+      ImageRegistry registry = ImageSession.getDefault().getRegistry();
+      if (System.getProperty("ime.registry.budget") != null) {
+        System.out.println("Image registry: " + registry);
+      }
     } else {
       IView view = new JFrameView();
       new GUICommandCallbackController(
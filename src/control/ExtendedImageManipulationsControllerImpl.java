@@ -8,12 +8,14 @@ import java.util.Map;
 import java.util.function.BiFunction;
 
 import control.cmd.BlurImage;
+import control.cmd.ConvolveImage;
 import control.cmd.CreateNewGreyscale;
 import control.cmd.DitherImage;
 import control.cmd.SepiaImage;
 import control.cmd.SharpenImage;
 import model.IImageManipulationsModelFactory;
 import model.NewImageManipulationsModel;
+import utility.ImageUtil;
 
 /**
  * Extension of the ImageManipulationsControllerImpl that contains the new model object.
@@ -52,6 +54,14 @@ public class ExtendedImageManipulationsControllerImpl extends ImageManipulations
     knownCommands.put("sepia", (a, o) -> new SepiaImage(a[1], a[2]));
     knownCommands.put("dither", (a, o) -> new DitherImage(a[1], a[2]));
     knownCommands.put("greyscale", (a, o) -> new CreateNewGreyscale(a[1], a[2]));
+    knownCommands.put("convolve", (a, o) -> {
+      double[][] kernel = ImageUtil.readKernel(o, a[1]);
+      if (kernel == null) {
+        return null;
+      }
+
+      return new ConvolveImage(kernel, a[2], a[3]);
+    });
 
     NewImageManipulationsCmd c;
     BiFunction<String[], PrintStream, NewImageManipulationsCmd> cmd =
@@ -60,6 +70,10 @@ public class ExtendedImageManipulationsControllerImpl extends ImageManipulations
       throw new IllegalArgumentException("Invalid command entered!");
     } else {
       c = cmd.apply(arr, outputStream);
+      if (c == null) {
+        // The command has already reported why it could not run.
+        return true;
+      }
       String str = c.getClass().getSimpleName();
       if (factory != null) {
         model = factory.getModel(fileExtension);
@@ -75,6 +89,46 @@ public class ExtendedImageManipulationsControllerImpl extends ImageManipulations
     }
   }
 
+  @Override
+  protected String[] getImagesRead(String[] arr) {
+    String[] images = super.getImagesRead(arr);
+    if (images != null) {
+      return images;
+    }
+    switch (arr[0]) {
+      case "blur":
+      case "sharpen":
+      case "sepia":
+      case "dither":
+      case "greyscale":
+        return operands(arr, 2, 1);
+      case "convolve":
+        return operands(arr, 3, 2);
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  protected String[] getImagesWritten(String[] arr) {
+    String[] images = super.getImagesWritten(arr);
+    if (images != null) {
+      return images;
+    }
+    switch (arr[0]) {
+      case "blur":
+      case "sharpen":
+      case "sepia":
+      case "dither":
+      case "greyscale":
+        return operands(arr, 2, 2);
+      case "convolve":
+        return operands(arr, 3, 3);
+      default:
+        return null;
+    }
+  }
+
   protected void printMenu(PrintStream out) {
     super.printMenu(out);
     out.print("blur sourceImage destinationImageName" + System.lineSeparator());
@@ -82,5 +136,6 @@ public class ExtendedImageManipulationsControllerImpl extends ImageManipulations
     out.print("sepia sourceImage destinationImageName" + System.lineSeparator());
     out.print("dither sourceImage destinationImageName" + System.lineSeparator());
     out.print("greyscale sourceImage destinationImageName" + System.lineSeparator());
+    out.print("convolve kernelFile sourceImage destinationImageName" + System.lineSeparator());
   }
 }
\ No newline at end of file
@@ -5,9 +5,13 @@ import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.function.BiFunction;
 
 import control.cmd.BrightenImage;
@@ -36,6 +40,16 @@ public class ImageManipulationsControllerImpl implements ImageManipulationsContr
 
   String fileExtension;
 
+  // Whether commands are being read from the user, in which case the images created by a script
+  // are kept for the commands that follow it.
+  private boolean interactive;
+
+  // The number of scripts being run, counting scripts run from other scripts.
+  private int scriptDepth;
+
+  // Writes the files of saved images in the background, or null if they are written right away.
+  private final SavePool saves = SavePool.create();
+
   /**
    * Parameterised constructor for ImageManipulationsControllerImpl class.
    *
@@ -140,6 +154,10 @@ public class ImageManipulationsControllerImpl implements ImageManipulationsContr
 
     knownCommands.put("load", (a, o) -> {
       fileExtension = ImageUtil.getFileExtension(a[1]);
+      ImageUtil.setOptions(a[1], parseOptions(a, 3));
+      if (saves != null) {
+        saves.await(a[1]);
+      }
       if (ImageUtil.readFile(o, a[1], fileExtension)) {
         return new LoadImage(a[1], a[2], o);
       }
@@ -149,6 +167,7 @@ public class ImageManipulationsControllerImpl implements ImageManipulationsContr
 
     knownCommands.put("save", (a, o) -> {
       fileExtension = ImageUtil.getFileExtension(a[1]);
+      ImageUtil.setOptions(a[1], parseOptions(a, 3));
       SaveImage obj = new SaveImage(a[1], a[2], o);
       return obj;
     });
@@ -176,7 +195,9 @@ public class ImageManipulationsControllerImpl implements ImageManipulationsContr
       boolean success = c.execute(model);
       if (success) {
         if (str.equals("SaveImage")) {
-          if (ImageUtil.writeFile(fileExtension, arr[1], outputStream)) {
+          if (saves != null) {
+            saves.submit(fileExtension, arr[1]);
+          } else if (ImageUtil.writeFile(fileExtension, arr[1], outputStream)) {
             outputStream.print(str + " successful!\n");
           }
         } else {
@@ -188,6 +209,173 @@ public class ImageManipulationsControllerImpl implements ImageManipulationsContr
     }
   }
 
+  /**
+   * Parses the options given after the arguments of a command. An option is a word starting
+   * with -- and may be followed by a value; an option without a value is set to true.
+   * For example "save image.ppm image --binary" asks for a binary file. Other words after the
+   * arguments are ignored, as they always have been.
+   *
+   * @param arr  the command split into its words.
+   * @param from the position of the first option.
+   * @return the options by name, without the leading dashes.
+   */
+  protected static Map<String, String> parseOptions(String[] arr, int from) {
+    Map<String, String> options = new HashMap<>();
+    int i = from;
+    while (i < arr.length) {
+      if (!arr[i].startsWith("--") || arr[i].length() == 2) {
+        i++;
+        continue;
+      }
+      String name = arr[i].substring(2);
+      String value = "true";
+      if (i + 1 < arr.length && !arr[i + 1].startsWith("--")) {
+        value = arr[i + 1];
+        i++;
+      }
+      options.put(name, value);
+      i++;
+    }
+    return options;
+  }
+
+  /**
+   * Gets the names of the images that a command reads. The script runner uses these, together
+   * with {@link #getImagesWritten(String[])}, to release every image created by a script right
+   * after its last use.
+   *
+   * @param arr the command split into its words.
+   * @return the names of the images read, or null if the command is not known.
+   */
+  protected String[] getImagesRead(String[] arr) {
+    switch (arr[0]) {
+      case "load":
+        return operands(arr, 2);
+      case "save":
+        return operands(arr, 2, 2);
+      case "brighten":
+        return operands(arr, 3, 2);
+      case "vertical-flip":
+      case "horizontal-flip":
+        return operands(arr, 2, 1);
+      case "greyscale":
+        return arr.length == 4 ? operands(arr, 3, 2) : null;
+      case "rgb-split":
+        return operands(arr, 4, 1);
+      case "rgb-combine":
+        return operands(arr, 4, 2, 3, 4);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Gets the names of the images that a command creates or replaces.
+   *
+   * @param arr the command split into its words.
+   * @return the names of the images written, or null if the command is not known.
+   */
+  protected String[] getImagesWritten(String[] arr) {
+    switch (arr[0]) {
+      case "load":
+        return operands(arr, 2, 2);
+      case "save":
+        return operands(arr, 2);
+      case "brighten":
+        return operands(arr, 3, 3);
+      case "vertical-flip":
+      case "horizontal-flip":
+        return operands(arr, 2, 2);
+      case "greyscale":
+        return arr.length == 4 ? operands(arr, 3, 3) : null;
+      case "rgb-split":
+        return operands(arr, 4, 2, 3, 4);
+      case "rgb-combine":
+        return operands(arr, 4, 1);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Picks the words at the given positions of a command.
+   *
+   * @param arr       the command split into its words.
+   * @param last      the position of the last word the command needs.
+   * @param positions the positions of the words to pick.
+   * @return the words, or null if the command is too short.
+   */
+  protected static String[] operands(String[] arr, int last, int... positions) {
+    if (arr.length <= last) {
+      return null;
+    }
+    String[] names = new String[positions.length];
+    for (int i = 0; i < positions.length; i++) {
+      names[i] = arr[positions[i]];
+    }
+    return names;
+  }
+
+  // Works out, for every line of a script, the images to release once the line has run: the
+  // images created by the script whose last use is on that line. Images that existed before the
+  // script are left alone. Returns null if the script cannot be analysed, such as when it runs
+  // another script that may use its images.
+  private List<List<String>> findDeadImages(List<String[]> lines) {
+    ImageManipulationsModel session = sessionModel();
+    Set<String> created = new HashSet<>();
+    Set<String> seen = new HashSet<>();
+    Map<String, Integer> lastUse = new HashMap<>();
+    for (int i = 0; i < lines.size(); i++) {
+      String[] arr = lines.get(i);
+      String[] read = getImagesRead(arr);
+      String[] written = getImagesWritten(arr);
+      if (read == null || written == null) {
+        return null;
+      }
+      for (String name : read) {
+        seen.add(name);
+        lastUse.put(name, i);
+      }
+      for (String name : written) {
+        if (seen.add(name) && session != null && !session.containsImage(name)) {
+          created.add(name);
+        }
+        lastUse.put(name, i);
+      }
+    }
+
+    List<List<String>> dead = new ArrayList<>();
+    for (int i = 0; i < lines.size(); i++) {
+      dead.add(new ArrayList<>());
+    }
+    for (Map.Entry<String, Integer> use : lastUse.entrySet()) {
+      if (created.contains(use.getKey())) {
+        dead.get(use.getValue()).add(use.getKey());
+      }
+    }
+    return dead;
+  }
+
+  // Gets a model of the session the script runs in, or null if there is none yet. All the models
+  // of a factory hold the images of the same session.
+  private ImageManipulationsModel sessionModel() {
+    if (model == null && factory != null) {
+      return factory.getModel(fileExtension == null ? "ppm" : fileExtension);
+    }
+    return model;
+  }
+
+  // Releases images through the model of the session the script runs in.
+  private void releaseImages(List<String> names) {
+    ImageManipulationsModel target = sessionModel();
+    if (target == null) {
+      return;
+    }
+    for (String name : names) {
+      target.releaseImage(name);
+    }
+  }
+
   @Override
   public void inputFromScriptFile(String filePath) throws IllegalArgumentException {
     PrintStream outputStream = new PrintStream(this.out);
@@ -199,14 +387,34 @@ public class ImageManipulationsControllerImpl implements ImageManipulationsContr
 
     StringBuilder fileContent = getFileContent(filePath, outputStream);
     Scanner sc = new Scanner(fileContent.toString());
+    List<String[]> lines = new ArrayList<>();
     while (sc.hasNextLine()) {
       String line = sc.nextLine();
       if (line.length() == 0) {
         continue;
       }
 
-      String[] arr = line.split(" ");
-      this.executeModel(arr, outputStream);
+      lines.add(line.split(" "));
+    }
+
+    // Images created by the script are released after their last use, so that only the images
+    // still needed are held in memory. A script run from the user commands or from another
+    // script keeps its images, since the commands after it may use them.
+    List<List<String>> deadImages = interactive || scriptDepth > 0 ? null
+            : findDeadImages(lines);
+    scriptDepth++;
+    try {
+      for (int i = 0; i < lines.size(); i++) {
+        this.executeModel(lines.get(i), outputStream);
+        if (deadImages != null) {
+          releaseImages(deadImages.get(i));
+        }
+      }
+    } finally {
+      scriptDepth--;
+    }
+    if (saves != null) {
+      saves.join(outputStream);
     }
 
     System.out.println();
@@ -219,6 +427,7 @@ public class ImageManipulationsControllerImpl implements ImageManipulationsContr
   public void inputFromUserCommands() throws IllegalArgumentException {
     PrintStream outputStream = new PrintStream(this.out);
     this.welcomeMessage(outputStream);
+    interactive = true;
 
     outputStream.println(System.lineSeparator()
             + "Enter user command for PPM image manipulation and Q to Quit:");
@@ -228,20 +437,26 @@ public class ImageManipulationsControllerImpl implements ImageManipulationsContr
     while (!line.equalsIgnoreCase("q")) {
       String[] arr = line.split(" ");
       this.executeModel(arr, outputStream);
+      if (saves != null) {
+        saves.report(outputStream);
+      }
 
       outputStream.println();
       outputStream.println("Enter next command:");
       line = sc.nextLine();
     }
 
+    if (saves != null) {
+      saves.join(outputStream);
+    }
     this.farewellMessage(outputStream);
   }
 
   protected void printMenu(PrintStream out) {
     out.print("Supported user instructions are: " + System.lineSeparator());
-    out.print("load imagePath imageName"
+    out.print("load imagePath imageName [--scale 1/n] [--region x,y,w,h]"
             + System.lineSeparator());
-    out.print("save imagePath imageName"
+    out.print("save imagePath imageName [--binary] [--quality 0-100] [--compression 0-9]"
             + System.lineSeparator());
     out.print("brighten increment sourceImage destinationImageName" + System.lineSeparator());
     out.print("vertical-flip sourceImage destinationImageName" + System.lineSeparator());
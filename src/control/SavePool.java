@@ -0,0 +1,187 @@
+package control;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import utility.ImageUtil;
+
+/**
+ * Writes the files of saved images on background threads, so that a script carries on with its
+ * next command while an image is being encoded. Saving an image only stages an encoder over its
+ * pixels, which are never changed once registered, so the file holds the image as it was when
+ * it was saved. Only a few saves are queued at a time; once the queue is full the script writes
+ * the next file itself until a thread is free.
+ *
+ * <p>The pool has {@link #DEFAULT_THREADS} threads, or at most as many as there are
+ * processors, unless the system property {@code ime.save.threads} gives another number; 0 turns
+ * the pool off so that every file is written right away. The outcome of every save is reported,
+ * in the order of the saves, when the pool is joined.
+ */
+class SavePool {
+
+  static final int DEFAULT_THREADS = 2;
+
+  // A file being written, with the message to report once it is.
+  private static class PendingSave {
+    final String path;
+    final Future<String> message;
+
+    PendingSave(String path, Future<String> message) {
+      this.path = path;
+      this.message = message;
+    }
+  }
+
+  private final ThreadPoolExecutor executor;
+  private final List<PendingSave> pending = new ArrayList<>();
+
+  /**
+   * Creates a pool.
+   *
+   * @param threads the number of threads writing files.
+   */
+  SavePool(int threads) {
+    executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(2 * threads), r -> {
+              Thread thread = new Thread(r, "ime-save");
+              thread.setDaemon(true);
+              return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Creates a pool with the default number of threads, or the number given by the
+   * {@code ime.save.threads} property.
+   *
+   * @return the pool, or null if files are to be written right away.
+   * @throws IllegalArgumentException if the property is not a number.
+   */
+  static SavePool create() throws IllegalArgumentException {
+    String threads = System.getProperty("ime.save.threads");
+    if (threads == null || threads.isEmpty()) {
+      return new SavePool(Math.min(DEFAULT_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+    try {
+      int count = Integer.parseInt(threads.trim());
+      return count > 0 ? new SavePool(count) : null;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number of save threads " + threads);
+    }
+  }
+
+  /**
+   * Writes the file of an image that has just been saved. The content staged for the path by
+   * the save is handed over to the thread writing the file.
+   *
+   * @param fileExtension extension of the file.
+   * @param imagePath     path of the image.
+   */
+  void submit(String fileExtension, String imagePath) {
+    String path = ImageUtil.getFullImagePath(imagePath);
+    // Saves to the same file are written in order.
+    await(path);
+    InputStream content = ImageUtil.getInputData(imagePath);
+    Map<String, String> options = ImageUtil.getOptions(imagePath);
+    ImageUtil.clearInputData(imagePath);
+
+    Future<String> message = executor.submit(() -> {
+      ImageUtil.setInputData(imagePath, content);
+      ImageUtil.setOptions(imagePath, options);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try {
+        if (ImageUtil.writeFile(fileExtension, imagePath, out)) {
+          return "SaveImage successful!\n";
+        }
+        return out.toString();
+      } catch (RuntimeException e) {
+        return "Error saving image " + path + ": " + e.getMessage() + "\n";
+      } finally {
+        ImageUtil.clearInputData(imagePath);
+      }
+    });
+    synchronized (pending) {
+      pending.add(new PendingSave(path, message));
+    }
+  }
+
+  /**
+   * Waits for the files being written to a path, such as before the file is loaded.
+   *
+   * @param imagePath path of the image.
+   */
+  void await(String imagePath) {
+    String path = ImageUtil.getFullImagePath(imagePath);
+    List<PendingSave> saves;
+    synchronized (pending) {
+      saves = new ArrayList<>(pending);
+    }
+    for (PendingSave save : saves) {
+      if (save.path.equals(path)) {
+        outcome(save);
+      }
+    }
+  }
+
+  /**
+   * Waits for all the files being written and reports how every save went.
+   *
+   * @param out the stream to report to.
+   */
+  void join(PrintStream out) {
+    List<PendingSave> saves;
+    synchronized (pending) {
+      saves = new ArrayList<>(pending);
+      pending.clear();
+    }
+    for (PendingSave save : saves) {
+      out.print(outcome(save));
+    }
+  }
+
+  /**
+   * Reports how the saves that are done went, in the order of the saves, without waiting for
+   * the others. A save is only reported once all the saves before it are.
+   *
+   * @param out the stream to report to.
+   */
+  void report(PrintStream out) {
+    List<PendingSave> saves = new ArrayList<>();
+    synchronized (pending) {
+      while (!pending.isEmpty() && pending.get(0).message.isDone()) {
+        saves.add(pending.remove(0));
+      }
+    }
+    for (PendingSave save : saves) {
+      out.print(outcome(save));
+    }
+  }
+
+  private static String outcome(PendingSave save) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return save.message.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      return "Error saving image " + save.path + ": " + e.getCause().getMessage() + "\n";
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package control.cmd;
+
+import control.NewImageManipulationsCmd;
+import model.NewImageManipulationsModel;
+
+/**
+ * Convolve image command.
+ */
+public class ConvolveImage implements NewImageManipulationsCmd {
+
+  private final double[][] kernel;
+  private final String sourceImageName;
+  private final String destImageName;
+
+  /**
+   * Constructor for convolve image command.
+   *
+   * @param kernel          Weights of the kernel, by row and then column.
+   * @param sourceImageName Source Image name that needs to be convolved.
+   * @param destImageName   Destination Image name that is obtained after convolving.
+   */
+  public ConvolveImage(double[][] kernel, String sourceImageName,
+                       String destImageName) throws IllegalArgumentException {
+    if (sourceImageName.isEmpty() || destImageName.isEmpty()) {
+      throw new IllegalArgumentException("Invalid arguments passed!");
+    }
+
+    this.kernel = kernel;
+    this.sourceImageName = sourceImageName;
+    this.destImageName = destImageName;
+  }
+
+  @Override
+  public boolean execute(NewImageManipulationsModel m) throws IllegalArgumentException {
+    m.convolve(kernel, sourceImageName, destImageName);
+    return true;
+  }
+}
@@ -1,10 +1,14 @@
 package model;
 
 
+import utility.ParallelEngine;
 import utility.Pixels;
+import utility.raster.FlippedRaster;
+import utility.raster.PlanarRaster;
+import utility.raster.Raster;
 
 import java.io.OutputStream;
-import java.util.HashMap;
+import java.util.function.IntUnaryOperator;
 
 /**
  * This class contains all the common image processing functions
@@ -12,26 +16,32 @@ import java.util.HashMap;
  */
 public abstract class AbstractImageManipulationsModel implements NewImageManipulationsModel {
 
-  // Maintains a map of the image name, and it's associated properties
-  // This helps in using the image name at any point later in our program
-  // after loading it only once.
-  protected static HashMap<String, Pixels> imageNamePropertiesMap = null;
+  // The weights of the greyscale used by rgb-split and by the single component greyscales.
+  private static final FixedPoint.ChannelWeights GREY_WEIGHTS =
+          new FixedPoint.ChannelWeights(0.299, 0.587, 0.114);
+
+  // The weights of the luma-component greyscale.
+  private static final FixedPoint.ChannelWeights LUMA_WEIGHTS =
+          new FixedPoint.ChannelWeights(0.2126, 0.7152, 0.0722);
+
+  // The greyscale of a single component, which applies all the grey weights to the one value,
+  // by that value.
+  private static final int[] COMPONENT_GREY = new int[256];
 
-  protected AbstractImageManipulationsModel() {
-    if (imageNamePropertiesMap == null) {
-      imageNamePropertiesMap = new HashMap<>();
+  static {
+    for (int v = 0; v < COMPONENT_GREY.length; v++) {
+      COMPONENT_GREY[v] = GREY_WEIGHTS.truncate(v, v, v);
     }
   }
 
-  // Helper function used to transfer the pixels from an array to the original list of pixels.
-  // This is used for vertical and horizontal flip of images.
-  protected void copyPixelValues(String[] newArr, Pixels newObj) {
-    int count = 0;
-    for (int i = 0; i < newObj.height; i++) {
-      for (int j = 0; j < newObj.width; j++) {
-        newObj.listOfPixels[j][i] = newArr[count++];
-      }
-    }
+  // Maintains a map of the image name, and it's associated properties
+  // This helps in using the image name at any point later in our program
+  // after loading it only once. Images beyond the memory budget are spilled to disk.
+  // Each session has its own map, which is shared by the models of that session.
+  protected final ImageRegistry imageNamePropertiesMap;
+
+  protected AbstractImageManipulationsModel(ImageSession session) {
+    this.imageNamePropertiesMap = session.getRegistry();
   }
 
   // Check if the image that suppose we want to flip etc. is already loaded or not.
@@ -42,6 +52,34 @@ public abstract class AbstractImageManipulationsModel implements NewImageManipul
     }
   }
 
+  // Applies a per-pixel operation to a whole image, one block at a time. The blocks follow the
+  // tile layout of the source raster so that each block is read and written in one go. Every
+  // row of tiles is a band of its own for the parallel engine.
+  protected void mapBlocks(Raster source, Raster destination, PixelOperation operation) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int tileWidth = Math.min(source.getTileWidth(), Math.max(width, 1));
+    int tileHeight = Math.min(source.getTileHeight(), Math.max(height, 1));
+    ParallelEngine.forEachBand(height, tileHeight, (top, bottom) -> {
+      int[] block = new int[tileWidth * tileHeight];
+      for (int ty = top; ty < bottom; ty += tileHeight) {
+        int blockHeight = Math.min(tileHeight, bottom - ty);
+        for (int tx = 0; tx < width; tx += tileWidth) {
+          int blockWidth = Math.min(tileWidth, width - tx);
+          source.getPixels(tx, ty, blockWidth, blockHeight, block, 0, blockWidth);
+          operation.apply(block, blockWidth * blockHeight);
+          destination.setPixels(tx, ty, blockWidth, blockHeight, block, 0, blockWidth);
+        }
+      }
+    });
+  }
+
+  // The height of the bands the parallel engine splits the rows of an image into, for work
+  // that goes through an image a row at a time.
+  protected static int bandHeight(Raster raster) {
+    return Math.min(raster.getTileHeight(), Math.max(raster.getHeight(), 1));
+  }
+
   @Override
   abstract public boolean loadImage(String imagePath, String imageName, OutputStream out)
           throws IllegalArgumentException;
@@ -49,6 +87,16 @@ public abstract class AbstractImageManipulationsModel implements NewImageManipul
   @Override
   abstract public boolean saveImage(String imagePath, String imageName, OutputStream out);
 
+  @Override
+  public boolean containsImage(String imageName) {
+    return imageNamePropertiesMap.containsKey(imageName);
+  }
+
+  @Override
+  public void releaseImage(String imageName) {
+    imageNamePropertiesMap.remove(imageName);
+  }
+
   @Override
   public void createGreyScale(String imageName,
                               String destinationImageName) throws IllegalArgumentException {
@@ -62,87 +110,71 @@ public abstract class AbstractImageManipulationsModel implements NewImageManipul
 
     checkIfImagePresentInMap(imageName);
 
+    PixelOperation operation;
+    switch (componentType) {
+      // Grey scaling of only the red component
+      case "red-component":
+        operation = greyscale(rgb -> COMPONENT_GREY[Pixels.red(rgb)]);
+        break;
+
+      // Grey scaling of only the green component
+      case "green-component":
+        operation = greyscale(rgb -> COMPONENT_GREY[Pixels.green(rgb)]);
+        break;
+
+      // Grey scaling of only the blue component
+      case "blue-component":
+        operation = greyscale(rgb -> COMPONENT_GREY[Pixels.blue(rgb)]);
+        break;
+
+      // The maximum value of the three components for each pixel
+      case "value-component":
+        operation = greyscale(rgb -> Math.max(Math.max(Pixels.red(rgb), Pixels.green(rgb)),
+                Pixels.blue(rgb)));
+        break;
+
+      // The weighted sum
+      case "luma-component":
+        operation = PixelKernels.get()::lumaGrey;
+        break;
+
+      // Average of three components for each pixel
+      case "intensity-component":
+        operation = greyscale(rgb -> (Pixels.red(rgb) + Pixels.green(rgb) + Pixels.blue(rgb)) / 3);
+        break;
+
+      default:
+        throw new IllegalArgumentException("Invalid Component Type for create greyscale image");
+    }
+
     Pixels obj = imageNamePropertiesMap.get(imageName);
     Pixels newObj = new Pixels(obj);
 
-    for (int y = 0; y < obj.height; y++) {
-      for (int x = 0; x < obj.width; x++) {
-        String[] arr = obj.listOfPixels[x][y].split(" ");
-        int grey;
-
-        // Grey scaling of only the red component
-        switch (componentType) {
-          case "red-component":
-            grey = (int) (0.299 * Integer.parseInt(arr[0])
-                    + 0.587 * Integer.parseInt(arr[0])
-                    + 0.114 * Integer.parseInt(arr[0]));
-            break;
-
-          // Grey scaling of only the green component
-          case "green-component":
-            grey = (int) (0.299 * Integer.parseInt(arr[1])
-                    + 0.587 * Integer.parseInt(arr[1])
-                    + 0.114 * Integer.parseInt(arr[1]));
-            break;
-
-          // Grey scaling of only the blue component
-          case "blue-component":
-            grey = (int) (0.299 * Integer.parseInt(arr[2])
-                    + 0.587 * Integer.parseInt(arr[2])
-                    + 0.114 * Integer.parseInt(arr[2]));
-            break;
-
-          // The maximum value of the three components for each pixel
-          case "value-component":
-            grey = Math.max(
-                    Math.max(Integer.parseInt(arr[0]), Integer.parseInt(arr[1])),
-                    Integer.parseInt(arr[2]));
-            break;
-
-          // The weighted sum
-          case "luma-component":
-            grey = (int) (0.2126 * Integer.parseInt(arr[0])
-                    + 0.7152 * Integer.parseInt(arr[1])
-                    + 0.0722 * Integer.parseInt(arr[2]));
-            break;
-
-          // Average of three components for each pixel
-          case "intensity-component":
-            grey = (Integer.parseInt(arr[0])
-                    + Integer.parseInt(arr[1])
-                    + Integer.parseInt(arr[2])) / 3;
-            break;
-
-          default:
-            throw new IllegalArgumentException("Invalid Component Type for create greyscale image");
-        }
-
-        newObj.listOfPixels[x][y] = grey + " " + grey + " " + grey;
-      }
-    }
+    mapBlocks(obj.raster, newObj.raster, operation);
 
     imageNamePropertiesMap.put(destinationImageName, newObj);
   }
 
+  // Turns every pixel into the grey given by a function of the pixel.
+  private static PixelOperation greyscale(IntUnaryOperator greyOf) {
+    return (pixels, length) -> {
+      for (int i = 0; i < length; i++) {
+        int grey = greyOf.applyAsInt(pixels[i]);
+        pixels[i] = Pixels.pack(grey, grey, grey);
+      }
+    };
+  }
+
   @Override
   public void horizontalFlip(String imageName, String destinationImageName)
           throws IllegalArgumentException {
 
     checkIfImagePresentInMap(imageName);
 
+    // The flipped image is a view over the source, no pixel is copied until it is modified.
     Pixels obj = imageNamePropertiesMap.get(imageName);
-    Pixels newObj = new Pixels(obj);
+    Pixels newObj = new Pixels(FlippedRaster.of(obj.raster, true, false));
 
-    String[] newArr = new String[newObj.width * newObj.height];
-    int count = 0;
-    for (int y = 0; y < obj.height; y++) {
-      for (int x = obj.width - 1; x >= 0; x--) {
-        String[] arr = obj.listOfPixels[x][y].split(" ");
-        newArr[count++] = (arr[0] + " " + arr[1] + " " + arr[2]);
-      }
-    }
-
-    copyPixelValues(newArr, newObj);
     imageNamePropertiesMap.put(destinationImageName, newObj);
   }
 
@@ -152,19 +184,10 @@ public abstract class AbstractImageManipulationsModel implements NewImageManipul
 
     checkIfImagePresentInMap(imageName);
 
+    // The flipped image is a view over the source, no pixel is copied until it is modified.
     Pixels obj = imageNamePropertiesMap.get(imageName);
-    Pixels newObj = new Pixels(obj);
+    Pixels newObj = new Pixels(FlippedRaster.of(obj.raster, false, true));
 
-    String[] newArr = new String[newObj.width * newObj.height];
-    int count = 0;
-    for (int y = obj.height - 1; y >= 0; y--) {
-      for (int x = 0; x < obj.width; x++) {
-        String[] arr = obj.listOfPixels[x][y].split(" ");
-        newArr[count++] = (arr[0] + " " + arr[1] + " " + arr[2]);
-      }
-    }
-
-    copyPixelValues(newArr, newObj);
     imageNamePropertiesMap.put(destinationImageName, newObj);
   }
 
@@ -177,17 +200,9 @@ public abstract class AbstractImageManipulationsModel implements NewImageManipul
     Pixels obj = imageNamePropertiesMap.get(imageName);
     Pixels newObj = new Pixels(obj);
 
-    for (int y = 0; y < obj.height; y++) {
-      for (int x = 0; x < obj.width; x++) {
-        String[] arr = obj.listOfPixels[x][y].split(" ");
-
-        int r = Math.min(Math.max(Integer.parseInt(arr[0]) + increment, 0), 255);
-        int g = Math.min(Math.max(Integer.parseInt(arr[1]) + increment, 0), 255);
-        int b = Math.min(Math.max(Integer.parseInt(arr[2]) + increment, 0), 255);
-
-        newObj.listOfPixels[x][y] = r + " " + g + " " + b;
-      }
-    }
+    PixelKernels kernels = PixelKernels.get();
+    mapBlocks(obj.raster, newObj.raster,
+        (pixels, length) -> kernels.brighten(pixels, length, increment));
 
     imageNamePropertiesMap.put(destinationImageName, newObj);
   }
@@ -201,26 +216,66 @@ public abstract class AbstractImageManipulationsModel implements NewImageManipul
     checkIfImagePresentInMap(imageName);
 
     Pixels obj = imageNamePropertiesMap.get(imageName);
+    if (obj.raster instanceof PlanarRaster) {
+      rgbSplitPlanar(obj, redDestinationImageName, greenDestinationImageName,
+              blueDestinationImageName);
+      return;
+    }
+
     Pixels obj_1 = new Pixels(obj);
     Pixels obj_2 = new Pixels(obj);
     Pixels obj_3 = new Pixels(obj);
-    for (int i = 0; i < obj.height; i++) {
-      for (int j = 0; j < obj.width; j++) {
-        String[] arr = obj.listOfPixels[j][i].split(" ");
-        int grey = (int) (0.299 * Integer.parseInt(arr[0])
-                + 0.587 * Integer.parseInt(arr[1])
-                + 0.114 * Integer.parseInt(arr[2]));
-        obj_1.listOfPixels[j][i] = grey + " " + 0 + " " + 0;
-        obj_2.listOfPixels[j][i] = 0 + " " + grey + " " + 0;
-        obj_3.listOfPixels[j][i] = 0 + " " + 0 + " " + grey;
+    ParallelEngine.forEachBand(obj.height, bandHeight(obj.raster), (top, bottom) -> {
+      int[] row = new int[obj.width];
+      int[] red = new int[obj.width];
+      int[] green = new int[obj.width];
+      int[] blue = new int[obj.width];
+      for (int i = top; i < bottom; i++) {
+        obj.raster.getRow(i, row, 0);
+        for (int j = 0; j < obj.width; j++) {
+          int grey = GREY_WEIGHTS.truncate(Pixels.red(row[j]), Pixels.green(row[j]),
+                  Pixels.blue(row[j]));
+          red[j] = Pixels.pack(grey, 0, 0);
+          green[j] = Pixels.pack(0, grey, 0);
+          blue[j] = Pixels.pack(0, 0, grey);
+        }
+        obj_1.raster.setRow(i, red, 0);
+        obj_2.raster.setRow(i, green, 0);
+        obj_3.raster.setRow(i, blue, 0);
       }
-    }
+    });
 
     imageNamePropertiesMap.put(redDestinationImageName, obj_1);
     imageNamePropertiesMap.put(greenDestinationImageName, obj_2);
     imageNamePropertiesMap.put(blueDestinationImageName, obj_3);
   }
 
+  // With planar storage the three split images only differ by the channel holding the grey
+  // value, so they share one grey plane and one black plane instead of owning nine planes.
+  private void rgbSplitPlanar(Pixels obj, String redDestinationImageName,
+                              String greenDestinationImageName,
+                              String blueDestinationImageName) {
+    PlanarRaster planar = (PlanarRaster) obj.raster;
+    byte[] red = planar.getPlane(PlanarRaster.RED);
+    byte[] green = planar.getPlane(PlanarRaster.GREEN);
+    byte[] blue = planar.getPlane(PlanarRaster.BLUE);
+    byte[] grey = new byte[red.length];
+    byte[] black = new byte[red.length];
+    int width = obj.width;
+    ParallelEngine.forEachBand(obj.height, bandHeight(planar), (top, bottom) -> {
+      for (int i = top * width; i < bottom * width; i++) {
+        grey[i] = (byte) GREY_WEIGHTS.truncate(red[i] & 0xFF, green[i] & 0xFF, blue[i] & 0xFF);
+      }
+    });
+
+    imageNamePropertiesMap.put(redDestinationImageName,
+            new Pixels(new PlanarRaster(obj.width, obj.height, grey, black, black)));
+    imageNamePropertiesMap.put(greenDestinationImageName,
+            new Pixels(new PlanarRaster(obj.width, obj.height, black, grey, black)));
+    imageNamePropertiesMap.put(blueDestinationImageName,
+            new Pixels(new PlanarRaster(obj.width, obj.height, black, black, grey)));
+  }
+
   @Override
   public void rgbCombine(String destinationImageName, String redSourceImageName,
                          String greenSourceImageName, String blueSourceImageName)
@@ -240,17 +295,33 @@ public abstract class AbstractImageManipulationsModel implements NewImageManipul
       throw new IllegalArgumentException("Wrong values");
     }
 
+    // With planar storage every channel is taken over from its source as it is.
+    if (obj_1.raster instanceof PlanarRaster && obj_2.raster instanceof PlanarRaster
+            && obj_3.raster instanceof PlanarRaster) {
+      PlanarRaster combined = new PlanarRaster(obj_1.width, obj_1.height,
+              ((PlanarRaster) obj_1.raster).sharePlane(PlanarRaster.RED),
+              ((PlanarRaster) obj_2.raster).sharePlane(PlanarRaster.GREEN),
+              ((PlanarRaster) obj_3.raster).sharePlane(PlanarRaster.BLUE));
+      imageNamePropertiesMap.put(destinationImageName, new Pixels(combined));
+      return;
+    }
+
     Pixels newObj = new Pixels(obj_1);
-    for (int i = 0; i < obj_1.height; i++) {
-      for (int j = 0; j < obj_2.width; j++) {
-        // Read the pixel values from the input files
-        String[] arr_1 = obj_1.listOfPixels[j][i].split(" ");
-        String[] arr_2 = obj_2.listOfPixels[j][i].split(" ");
-        String[] arr_3 = obj_3.listOfPixels[j][i].split(" ");
-
-        newObj.listOfPixels[j][i] = arr_1[0] + " " + arr_2[1] + " " + arr_3[2];
+    ParallelEngine.forEachBand(obj_1.height, bandHeight(obj_1.raster), (top, bottom) -> {
+      int[] red = new int[obj_1.width];
+      int[] green = new int[obj_1.width];
+      int[] blue = new int[obj_1.width];
+      for (int i = top; i < bottom; i++) {
+        obj_1.raster.getRow(i, red, 0);
+        obj_2.raster.getRow(i, green, 0);
+        obj_3.raster.getRow(i, blue, 0);
+        for (int j = 0; j < obj_1.width; j++) {
+          // Take each channel from its own source image
+          red[j] = (red[j] & 0xFF0000) | (green[j] & 0x00FF00) | (blue[j] & 0x0000FF);
+        }
+        newObj.raster.setRow(i, red, 0);
       }
-    }
+    });
     imageNamePropertiesMap.put(destinationImageName, newObj);
   }
 
@@ -259,12 +330,16 @@ public abstract class AbstractImageManipulationsModel implements NewImageManipul
     Pixels obj = imageNamePropertiesMap.get(imageName);
     int width = obj.width;
     int height = obj.height;
-    String[][] listPixels = obj.listOfPixels;
     StringBuilder pixels = new StringBuilder();
 
+    int[] row = new int[width];
     for (int i = 0; i < height; i++) {
+      obj.raster.getRow(i, row, 0);
       for (int j = 0; j < width; j++) {
-        pixels.append(listPixels[j][i] + "\n");
+        int rgb = row[j];
+        pixels.append(Pixels.red(rgb)).append(' ')
+                .append(Pixels.green(rgb)).append(' ')
+                .append(Pixels.blue(rgb)).append('\n');
       }
     }
 
@@ -280,82 +355,195 @@ public abstract class AbstractImageManipulationsModel implements NewImageManipul
     return imageNamePropertiesMap.get(imageName);
   }
 
-  private void applyFilter(double[][] kernel, String imageName,
+  // Applies a 3x3 filter whose weights are given in fixed point. The sums of such weights are
+  // exact, so they are the same as the sums of the weights in doubles.
+  private void applyFilter(int[][] kernel, String imageName,
                            String destinationImageName) {
     checkIfImagePresentInMap(imageName);
 
     Pixels obj = imageNamePropertiesMap.get(imageName);
     Pixels newObj = new Pixels(obj);
 
-    // Create a new 2D array for the blurred image
-    int[][][] outputPixels = new int[obj.width][obj.height][3];
+    if (obj.raster instanceof PlanarRaster) {
+      PlanarRaster source = (PlanarRaster) obj.raster;
+      PlanarRaster destination = (PlanarRaster) newObj.raster;
+      for (int channel = PlanarRaster.RED; channel <= PlanarRaster.BLUE; channel++) {
+        applyFilterToPlane(kernel, source.getPlane(channel),
+                destination.getWritablePlane(channel), obj.width, obj.height,
+                bandHeight(source));
+      }
+      imageNamePropertiesMap.put(destinationImageName, newObj);
+      return;
+    }
+
+    // Apply the filter to each pixel of every channel, the border pixels are left black.
+    // The image is filtered block by block, following the tile layout of the source. Each block
+    // is read together with a one pixel margin holding the neighbours under the kernel.
+    // Every row of tiles is a band of its own for the parallel engine.
+    int width = obj.width;
+    int height = obj.height;
+    int tileWidth = Math.min(obj.raster.getTileWidth(), Math.max(width, 1));
+    int tileHeight = Math.min(obj.raster.getTileHeight(), Math.max(height, 1));
+    ParallelEngine.forEachBand(height, tileHeight, (top, bottom) -> {
+      int[] window = new int[(tileWidth + 2) * (tileHeight + 2)];
+      int[] output = new int[tileWidth * tileHeight];
+      for (int ty = top; ty < bottom; ty += tileHeight) {
+        int blockHeight = Math.min(tileHeight, bottom - ty);
+        for (int tx = 0; tx < width; tx += tileWidth) {
+          int blockWidth = Math.min(tileWidth, width - tx);
+          int windowX = Math.max(tx - 1, 0);
+          int windowY = Math.max(ty - 1, 0);
+          int windowWidth = Math.min(tx + blockWidth + 1, width) - windowX;
+          int windowHeight = Math.min(ty + blockHeight + 1, height) - windowY;
+          obj.raster.getPixels(windowX, windowY, windowWidth, windowHeight,
+                  window, 0, windowWidth);
+
+          for (int j = ty; j < ty + blockHeight; j++) {
+            for (int i = tx; i < tx + blockWidth; i++) {
+              int index = (j - ty) * blockWidth + i - tx;
+              if (i == 0 || j == 0 || i == width - 1 || j == height - 1) {
+                output[index] = 0;
+                continue;
+              }
+
+              int red = 0;
+              int green = 0;
+              int blue = 0;
+              for (int u = -1; u <= 1; u++) {
+                for (int v = -1; v <= 1; v++) {
+                  int rgb = window[(j + v - windowY) * windowWidth + i + u - windowX];
+                  red += kernel[u + 1][v + 1] * Pixels.red(rgb);
+                  green += kernel[u + 1][v + 1] * Pixels.green(rgb);
+                  blue += kernel[u + 1][v + 1] * Pixels.blue(rgb);
+                }
+              }
+
+              output[index] = Pixels.pack(Pixels.clamp(FixedPoint.toInt(red)),
+                      Pixels.clamp(FixedPoint.toInt(green)),
+                      Pixels.clamp(FixedPoint.toInt(blue)));
+            }
+          }
+          newObj.raster.setPixels(tx, ty, blockWidth, blockHeight, output, 0, blockWidth);
+        }
+      }
+    });
+
+    imageNamePropertiesMap.put(destinationImageName, newObj);
+  }
 
-    // Apply the filter to each pixel of every channel
-    for (int i = 1; i < obj.width - 1; i++) {
-      for (int j = 1; j < obj.height - 1; j++) {
-        for (int k = 0; k < 3; k++) { // loop over RGB channels
-          double sum = 0.0;
+  // Applies a 3x3 filter to one channel plane, streaming through it one row at a time.
+  private void applyFilterToPlane(int[][] kernel, byte[] source, byte[] destination,
+                                  int width, int height, int bandHeight) {
+    ParallelEngine.forEachBand(height, bandHeight, (top, bottom) -> {
+      for (int j = Math.max(top, 1); j < Math.min(bottom, height - 1); j++) {
+        for (int i = 1; i < width - 1; i++) {
+          int sum = 0;
           for (int u = -1; u <= 1; u++) {
             for (int v = -1; v <= 1; v++) {
-              String[] arr = obj.listOfPixels[i + u][j + v].split(" ");
-              sum += kernel[u + 1][v + 1] * Integer.parseInt(arr[k]);
+              sum += kernel[u + 1][v + 1] * (source[(j + v) * width + i + u] & 0xFF);
             }
           }
-          outputPixels[i][j][k] = (int) sum;
+          destination[j * width + i] = (byte) Pixels.clamp(FixedPoint.toInt(sum));
         }
       }
-    }
+    });
+  }
+
+  // The lanes of a long holding the three channels of a pixel 16 bits apart, see spread.
+  private static final long CHANNEL_LANES = 0xFFL << 32 | 0xFFL << 16 | 0xFFL;
+
+  @Override
+  public void blur(String imageName, String destinationImageName) throws IllegalArgumentException {
+    checkIfImagePresentInMap(imageName);
+
+    Pixels obj = imageNamePropertiesMap.get(imageName);
+    Pixels newObj = new Pixels(obj);
+
+    // The blur kernel {{1, 2, 1}, {2, 4, 2}, {1, 2, 1}} / 16 is the product of [1 2 1] with
+    // itself, so it is applied as a horizontal pass into a line buffer followed by a vertical
+    // pass over three such lines. The sums are whole numbers, and dividing them by 16 by
+    // shifting gives the same value as adding up the weights in doubles and truncating. The
+    // border pixels are left black, as with the other filters.
+    int width = obj.width;
+    int height = obj.height;
+    ParallelEngine.forEachBand(height, bandHeight(obj.raster), (top, bottom) -> {
+      int[] row = new int[width];
+      int[] output = new int[width];
+      long[] above = new long[width];
+      long[] middle = new long[width];
+      long[] below = new long[width];
+      int first = Math.max(top, 1);
+      int last = Math.min(bottom, height - 1);
+      for (int j = top; j < bottom; j++) {
+        if (j < first || j >= last) {
+          newObj.raster.setRow(j, output, 0);
+        }
+      }
+      if (first >= last) {
+        return;
+      }
 
-    for (int i = 0; i < obj.height; i++) {
-      for (int j = 0; j < obj.width; j++) {
-        int red = outputPixels[j][i][0];
-        int green = outputPixels[j][i][1];
-        int blue = outputPixels[j][i][2];
+      blurRow(obj.raster, first - 1, row, above);
+      blurRow(obj.raster, first, row, middle);
+      for (int j = first; j < last; j++) {
+        blurRow(obj.raster, j + 1, row, below);
+        for (int i = 1; i < width - 1; i++) {
+          long sum = above[i] + 2 * middle[i] + below[i];
+          long blurred = (sum >>> 4) & CHANNEL_LANES;
+          output[i] = (int) (blurred >>> 16) & 0xFF0000
+                  | (int) (blurred >>> 8) & 0x00FF00
+                  | (int) blurred & 0x0000FF;
+        }
+        newObj.raster.setRow(j, output, 0);
 
-        newObj.listOfPixels[j][i] = Math.min(Math.max(red, 0), 255) + " " +
-                Math.min(Math.max(green, 0), 255) + " " +
-                Math.min(Math.max(blue, 0), 255);
+        long[] free = above;
+        above = middle;
+        middle = below;
+        below = free;
       }
-    }
+    });
 
     imageNamePropertiesMap.put(destinationImageName, newObj);
   }
 
-  @Override
-  public void blur(String imageName, String destinationImageName) throws IllegalArgumentException {
-    // Define the blur filter kernel
-    double[][] kernel = {{0.0625, 0.125, 0.0625}, {0.125, 0.25, 0.125}, {0.0625, 0.125, 0.0625}};
-    applyFilter(kernel, imageName, destinationImageName);
+  // Applies the horizontal [1 2 1] pass of the blur to one row of an image. A sum is at most
+  // 4 * 255, so the three channels are added up at once in 16 bit lanes of a long.
+  private static void blurRow(Raster raster, int y, int[] row, long[] line) {
+    raster.getRow(y, row, 0);
+    for (int i = 1; i < row.length - 1; i++) {
+      line[i] = spread(row[i - 1]) + 2 * spread(row[i]) + spread(row[i + 1]);
+    }
+  }
+
+  // Moves the red, green and blue channels of a pixel to bits 32, 16 and 0 of a long.
+  private static long spread(int rgb) {
+    return (long) (rgb & 0xFF0000) << 16 | (rgb & 0x00FF00) << 8 | rgb & 0x0000FF;
   }
 
 
   @Override
-  public void sepia(String imageName, String destinationImageName)
+  public void convolve(double[][] kernel, String imageName, String destinationImageName)
           throws IllegalArgumentException {
     checkIfImagePresentInMap(imageName);
 
     Pixels obj = imageNamePropertiesMap.get(imageName);
     Pixels newObj = new Pixels(obj);
+    ConvolutionEngine.convolve(kernel, obj.raster, newObj.raster);
+
+    imageNamePropertiesMap.put(destinationImageName, newObj);
+  }
+
+  @Override
+  public void sepia(String imageName, String destinationImageName)
+          throws IllegalArgumentException {
+    checkIfImagePresentInMap(imageName);
 
-    // Define the kernel filter for sepia processing.
-    double[][] filter = {{0.393, 0.769, 0.189}, {0.349, 0.686, 0.168}, {0.272, 0.534, 0.131}};
+    Pixels obj = imageNamePropertiesMap.get(imageName);
+    Pixels newObj = new Pixels(obj);
 
     //Apply a 3x3 and 3x1 matrix multiplication where in the resultant new values
     // of the channels can be obtained.
-    for (int y = 0; y < obj.height; y++) {
-      for (int x = 0; x < obj.width; x++) {
-        String[] arr = obj.listOfPixels[x][y].split(" ");
-        int[] sum = {0, 0, 0};
-        for (int i = 0; i <= 2; i++) {
-          sum[i] += Double.parseDouble(arr[0]) * filter[i][0];
-          sum[i] += Double.parseDouble(arr[1]) * filter[i][1];
-          sum[i] += Double.parseDouble(arr[2]) * filter[i][2];
-        }
-        newObj.listOfPixels[x][y] = Math.min(Math.max(sum[0], 0), 255) + " " +
-                Math.min(Math.max(sum[1], 0), 255) + " " +
-                Math.min(Math.max(sum[2], 0), 255);
-      }
-    }
+    mapBlocks(obj.raster, newObj.raster, PixelKernels.get()::sepia);
 
     imageNamePropertiesMap.put(destinationImageName, newObj);
   }
@@ -365,60 +553,75 @@ public abstract class AbstractImageManipulationsModel implements NewImageManipul
           throws IllegalArgumentException {
 
     checkIfImagePresentInMap(imageName);
-    //Apply luma-component greyscale on the image prior to dither
-    // operation and store temporarily.
-    this.createGreyScale("luma-component", imageName,
-            "tempLumaForDither");
-    checkIfImagePresentInMap("tempLumaForDither");
-    Pixels luma = imageNamePropertiesMap.get("tempLumaForDither");
-    Pixels dither = new Pixels(luma);
-    // Red component is chosen to perform the calculation of error and the
-    // new value of red obtained in each of the neighboring pixels are used
+    // The dither works on the luma-component greyscale of the image, which is computed a row
+    // at a time as the rows are reached instead of being stored as an image of its own.
+    Pixels source = imageNamePropertiesMap.get(imageName);
+    Pixels dither = new Pixels(source);
+
+    // The diffused error can push a value outside 0 to 255, so the working values are
+    // kept in plain int rows instead of the packed pixels. The error only ever reaches the
+    // current and the next row, so two rows are enough.
+    int width = source.width;
+    int height = source.height;
+    int[] current = new int[width];
+    int[] next = new int[width];
+    int[] output = new int[width];
+    if (height > 0) {
+      readLuma(source, 0, current);
+    }
+
+    // The luma is used to perform the calculation of error and the
+    // new value obtained in each of the neighboring pixels are used
     // to populate in all the channels of that given pixel.
-    for (int y = 0; y < luma.height; y++) {
-      for (int x = 0; x < luma.width; x++) {
-        String[] arr = luma.listOfPixels[x][y].split(" ");
-        int oldRed = Integer.parseInt(arr[0]);
+    for (int y = 0; y < height; y++) {
+      if (y < height - 1) {
+        readLuma(source, y + 1, next);
+      }
+      for (int x = 0; x < width; x++) {
+        int oldRed = current[x];
         int newRed = oldRed < 128 ? 0 : 255;
-        dither.listOfPixels[x][y] = newRed + " " + newRed + " " + newRed;
+        output[x] = Pixels.pack(newRed, newRed, newRed);
         int error = oldRed - newRed;
-        if (x < luma.width - 1) {
-          String[] neighborRow = luma.listOfPixels[x + 1][y].split(" ");
-          int neighborRed = Integer.parseInt(neighborRow[0]);
-          int calculatedRed = neighborRed + error * 7 / 16;
-          luma.listOfPixels[x + 1][y] = calculatedRed + " " + calculatedRed +
-                  " " + calculatedRed;
+        if (x < width - 1) {
+          current[x + 1] += error * 7 / 16;
         }
-        if (x > 0 && y < luma.height - 1) {
-          String[] neighborRow = luma.listOfPixels[x - 1][y + 1].split(" ");
-          int neighborRed = Integer.parseInt(neighborRow[0]);
-          int calculatedRed = neighborRed + error * 3 / 16;
-          luma.listOfPixels[x - 1][y + 1] = calculatedRed + " " + calculatedRed +
-                  " " + calculatedRed;
+        if (x > 0 && y < height - 1) {
+          next[x - 1] += error * 3 / 16;
         }
-        if (y < luma.height - 1) {
-          String[] neighborRow = luma.listOfPixels[x][y + 1].split(" ");
-          int neighborRed = Integer.parseInt(neighborRow[0]);
-          int calculatedRed = neighborRed + error * 5 / 16;
-          luma.listOfPixels[x][y + 1] = calculatedRed + " " + calculatedRed +
-                  " " + calculatedRed;
+        if (y < height - 1) {
+          next[x] += error * 5 / 16;
         }
-        if (x < luma.width - 1 && y < luma.height - 1) {
-          String[] neighborRow = luma.listOfPixels[x + 1][y + 1].split(" ");
-          int neighborRed = Integer.parseInt(neighborRow[0]);
-          int calculatedRed = neighborRed + error * 1 / 16;
-          luma.listOfPixels[x + 1][y + 1] = calculatedRed + " " + calculatedRed +
-                  " " + calculatedRed;
+        if (x < width - 1 && y < height - 1) {
+          next[x + 1] += error * 1 / 16;
         }
       }
+      dither.raster.setRow(y, output, 0);
+      int[] swap = current;
+      current = next;
+      next = swap;
     }
     imageNamePropertiesMap.put(destinationImageName, dither);
   }
 
+  // The weighted sum used by the luma-component greyscale.
+  protected static int luma(int rgb) {
+    return LUMA_WEIGHTS.truncate(Pixels.red(rgb), Pixels.green(rgb), Pixels.blue(rgb));
+  }
+
+  // Reads the luma of one row of an image.
+  private void readLuma(Pixels obj, int y, int[] values) {
+    obj.raster.getRow(y, values, 0);
+    PixelKernels.get().lumaGrey(values, values.length);
+    for (int x = 0; x < values.length; x++) {
+      values[x] = Pixels.blue(values[x]);
+    }
+  }
+
   @Override
   public void sharpen(String imageName, String destinationImageName)
           throws IllegalArgumentException {
-    double[][] kernel = {{-0.125, -0.125, -0.125}, {-0.125, 2.0, -0.125}, {-0.125, -0.125, -0.125}};
+    int[][] kernel = FixedPoint.of(new double[][]{{-0.125, -0.125, -0.125},
+        {-0.125, 2.0, -0.125}, {-0.125, -0.125, -0.125}});
 
     applyFilter(kernel, imageName, destinationImageName);
   }
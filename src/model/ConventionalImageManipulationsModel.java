@@ -1,16 +1,18 @@
 package model;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 
 import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 
+import utility.EncodedImageStream;
+import utility.FileSourceStream;
 import utility.ImageUtil;
+import utility.ParallelPNGEncoder;
 import utility.Pixels;
 
 /**
@@ -21,18 +23,23 @@ public class ConventionalImageManipulationsModel extends AbstractImageManipulati
 
   private static ConventionalImageManipulationsModel instance = null;
 
-  protected ConventionalImageManipulationsModel() {
-    super();
+  /**
+   * Creates a model working on the images of a session.
+   *
+   * @param session the session holding the images.
+   */
+  protected ConventionalImageManipulationsModel(ImageSession session) {
+    super(session);
   }
 
   /**
-   * Single-ton design pattern.
+   * Singleton design pattern.
    *
    * @return the class object.
    */
-  public static ConventionalImageManipulationsModel getInstance() {
+  public static synchronized ConventionalImageManipulationsModel getInstance() {
     if (instance == null) {
-      instance = new ConventionalImageManipulationsModel();
+      instance = new ConventionalImageManipulationsModel(ImageSession.getDefault());
     }
 
     return instance;
@@ -47,28 +54,26 @@ public class ConventionalImageManipulationsModel extends AbstractImageManipulati
       throw new IllegalArgumentException("Invalid Input Stream!");
     }
 
-    BufferedImage image = null;
+    // A file staged by readFile is decoded straight from disk. Anything else, such as the
+    // content of an image saved but not written yet, is decoded from memory.
+    BufferedImage image;
     try {
-      image = ImageIO.read(in);
+      ImageInputStream stream = in instanceof FileSourceStream
+              ? ImageIO.createImageInputStream(((FileSourceStream) in).getPath().toFile())
+              : ImageIO.createImageInputStream(in);
+      image = ImageUtil.readImage(stream, ImageUtil.getFileExtension(imagePath),
+              ImageUtil.getOptions(imagePath));
     } catch (IOException e) {
       PrintStream putStream = new PrintStream(out);
       putStream.print("Error loading image: " + e.getMessage());
+      return false;
+    }
+    if (image == null) {
+      throw new IllegalArgumentException("Unsupported image format!");
     }
 
-    int width = image.getWidth();
-    int height = image.getHeight();
-    Pixels properties = new Pixels(width, height);
     // Get the pixel values
-    for (int x = 0; x < width; x++) {
-      for (int y = 0; y < height; y++) {
-        int rgb = image.getRGB(x, y);
-        Color color = new Color(rgb);
-        int r = color.getRed();
-        int g = color.getGreen();
-        int b = color.getBlue();
-        properties.listOfPixels[x][y] = r + " " + g + " " + b;
-      }
-    }
+    Pixels properties = new Pixels(ImageUtil.toRaster(image));
     imageNamePropertiesMap.put(imageName, properties);
     return true;
   }
@@ -78,31 +83,22 @@ public class ConventionalImageManipulationsModel extends AbstractImageManipulati
           throws IllegalArgumentException {
     checkIfImagePresentInMap(imageName);
 
-    // Create a new file at the specified path with the given file name
+    // The image is encoded when its file is written, straight into the file. The pixels of a
+    // registered image are never changed, so the encoder can hold on to them as they are.
     Pixels obj = imageNamePropertiesMap.get(imageName);
-    BufferedImage image = new BufferedImage(obj.width, obj.height, BufferedImage.TYPE_INT_RGB);
-
-    for (int y = 0; y < obj.height; y++) {
-      for (int x = 0; x < obj.width; x++) {
-        String[] arr = obj.listOfPixels[x][y].split(" ");
-        Color temp = new Color(Integer.parseInt(arr[0]),
-                Integer.parseInt(arr[1]),
-                Integer.parseInt(arr[2]));
-        image.setRGB(x, y, temp.getRGB());
-      }
-    }
-
-    try {
-      String fileExtension = ImageUtil.getFileExtension(imagePath);
-      byte[] bytes = ImageUtil.toByteArray(image, fileExtension);
-
-      // Convert byte array to InputStream
-      InputStream inputStream = new ByteArrayInputStream(bytes);
-      ImageUtil.setInputData(imagePath, inputStream);
-    } catch (IOException e) {
-      PrintStream outStream = new PrintStream(out);
-      outStream.print("Error saving image: " + e.getMessage());
-      return false;
+    String fileExtension = ImageUtil.getFileExtension(imagePath);
+    float quality = ImageUtil.getCompressionQuality(fileExtension,
+            ImageUtil.getOptions(imagePath));
+    if (fileExtension.equalsIgnoreCase("png")
+            && (long) obj.width * obj.height >= ParallelPNGEncoder.MIN_PIXELS) {
+      // Large PNG images are compressed on all cores. The level is the one ImageIO would use.
+      int level = quality < 0 ? 4 : 9 - Math.round(9 * quality);
+      ImageUtil.setInputData(imagePath, new EncodedImageStream(o ->
+              ParallelPNGEncoder.write(obj.raster, level, o)));
+    } else {
+      ImageUtil.setInputData(imagePath, new EncodedImageStream(o ->
+              ImageUtil.writeImage(ImageUtil.toBufferedImage(obj.raster), fileExtension,
+                      quality, o)));
     }
 
     return true;
@@ -0,0 +1,384 @@
+package model;
+
+import java.util.Arrays;
+
+import utility.ParallelEngine;
+import utility.Pixels;
+import utility.raster.Raster;
+
+/**
+ * Convolves images with kernels of any odd width and height. The kernel is centred on every
+ * pixel and the weighted sum of the pixels under it is taken for each channel. A channel is that
+ * sum plus {@link #EPSILON}, truncated and clamped to 0 to 255. As with blur and sharpen, the
+ * pixels too close to the border for the kernel to fit are left black.
+ *
+ * <p>One of three ways of computing the sums is picked for every kernel:
+ * <ul>
+ *   <li>A kernel that is the product of a column and a row, such as a box or Gaussian blur, is
+ *   applied as a horizontal pass followed by a vertical pass, which costs width + height
+ *   multiplications per pixel instead of width * height.</li>
+ *   <li>Other small kernels are applied directly.</li>
+ *   <li>Other large kernels are applied through the fast Fourier transform, one tile of the image
+ *   at a time, so that the cost per pixel grows with the logarithm of the kernel size.</li>
+ * </ul>
+ * The three ways add up in a different order, so a sum that is a whole number may come out a
+ * tiny bit below it; adding {@link #EPSILON} before truncating keeps such sums whole. This is
+ * part of what convolve computes, not only a correction: a sum that really is less than
+ * {@link #EPSILON} below a whole number is also taken as that number. The rounding errors of the
+ * three ways are far smaller than {@link #EPSILON}, so they give the same image unless a sum
+ * lands within those errors of a whole number less {@link #EPSILON}, which sums with weights
+ * given to at most five decimal places never do.
+ */
+final class ConvolutionEngine {
+
+  // Kernels that are not separable and have more weights than this go through the FFT.
+  static final int DIRECT_LIMIT = 49;
+
+  // Added to every sum before it is truncated, see the class comment.
+  static final double EPSILON = 1e-6;
+
+  // The smallest side of the FFT tiles. Smaller tiles waste most of the transform on the margin
+  // that the kernel needs around the tile.
+  private static final int MIN_FFT_SIZE = 64;
+
+  private ConvolutionEngine() {
+  }
+
+  /**
+   * Convolves an image with a kernel.
+   *
+   * @param kernel      the weights, by row and then column, with an odd number of each.
+   * @param source      the pixels of the image.
+   * @param destination a new raster of the same size, whose pixels are all black.
+   * @throws IllegalArgumentException if the kernel is empty, not rectangular, has an even number
+   *                                  of rows or columns, or has a weight that is not finite.
+   */
+  static void convolve(double[][] kernel, Raster source, Raster destination)
+          throws IllegalArgumentException {
+    checkKernel(kernel);
+    int rows = kernel.length;
+    int columns = kernel[0].length;
+    if (source.getWidth() < columns || source.getHeight() < rows) {
+      // The kernel does not fit anywhere, so the whole image is border.
+      return;
+    }
+
+    double[][] factors = separate(kernel);
+    if (factors != null) {
+      convolveSeparable(factors[0], factors[1], source, destination);
+    } else if (rows * columns <= DIRECT_LIMIT) {
+      convolveDirect(kernel, source, destination);
+    } else {
+      convolveFFT(kernel, source, destination);
+    }
+  }
+
+  private static void checkKernel(double[][] kernel) throws IllegalArgumentException {
+    if (kernel == null || kernel.length == 0 || kernel[0].length == 0) {
+      throw new IllegalArgumentException("Invalid kernel: the kernel is empty");
+    }
+    for (double[] row : kernel) {
+      if (row.length != kernel[0].length) {
+        throw new IllegalArgumentException("Invalid kernel: rows of different lengths");
+      }
+      for (double weight : row) {
+        if (Double.isNaN(weight) || Double.isInfinite(weight)) {
+          throw new IllegalArgumentException("Invalid kernel: weights must be finite");
+        }
+      }
+    }
+    if (kernel.length % 2 == 0 || kernel[0].length % 2 == 0) {
+      throw new IllegalArgumentException("Invalid kernel: the number of rows and columns must "
+              + "be odd");
+    }
+  }
+
+  // Splits a kernel into a column and a row whose product it is, or returns null if there are
+  // none. Such a kernel has rank one: every row is a multiple of the row holding the largest
+  // weight.
+  private static double[][] separate(double[][] kernel) {
+    int pivotRow = 0;
+    int pivotColumn = 0;
+    for (int i = 0; i < kernel.length; i++) {
+      for (int j = 0; j < kernel[i].length; j++) {
+        if (Math.abs(kernel[i][j]) > Math.abs(kernel[pivotRow][pivotColumn])) {
+          pivotRow = i;
+          pivotColumn = j;
+        }
+      }
+    }
+    double pivot = kernel[pivotRow][pivotColumn];
+    if (pivot == 0) {
+      return null;
+    }
+
+    double tolerance = 1e-12 * pivot * pivot;
+    for (int i = 0; i < kernel.length; i++) {
+      for (int j = 0; j < kernel[i].length; j++) {
+        double product = kernel[i][pivotColumn] * kernel[pivotRow][j];
+        if (Math.abs(kernel[i][j] * pivot - product) > tolerance) {
+          return null;
+        }
+      }
+    }
+
+    double[] column = new double[kernel.length];
+    double[] row = new double[kernel[0].length];
+    for (int i = 0; i < column.length; i++) {
+      column[i] = kernel[i][pivotColumn];
+    }
+    for (int j = 0; j < row.length; j++) {
+      row[j] = kernel[pivotRow][j] / pivot;
+    }
+    return new double[][]{column, row};
+  }
+
+  // Truncates a sum plus EPSILON to a channel value.
+  private static int toChannel(double sum) {
+    return Pixels.clamp((int) Math.floor(sum + EPSILON));
+  }
+
+  private static void convolveDirect(double[][] kernel, Raster source, Raster destination) {
+    int width = source.getWidth();
+    int rows = kernel.length;
+    int columns = kernel[0].length;
+    int rx = columns / 2;
+    int ry = rows / 2;
+    int outputWidth = width - columns + 1;
+    int bandHeight = Math.min(source.getTileHeight(), source.getHeight());
+
+    // The output rows, counted from ry on, are handled a band at a time. A band of output rows
+    // starting at top needs the input rows from top to the bottom of the band plus the height
+    // of the kernel.
+    PixelKernels kernels = PixelKernels.get();
+    ParallelEngine.forEachBand(source.getHeight() - rows + 1, bandHeight, (top, bottom) -> {
+      int[] input = new int[(bandHeight + rows - 1) * width];
+      int[] output = new int[outputWidth];
+      double[] red = new double[outputWidth];
+      double[] green = new double[outputWidth];
+      double[] blue = new double[outputWidth];
+      for (int first = top; first < bottom; first += bandHeight) {
+        int last = Math.min(bottom, first + bandHeight);
+        source.getPixels(0, first, width, last - first + rows - 1, input, 0, width);
+
+        for (int y = first; y < last; y++) {
+          kernels.correlate(kernel, input, (y - first) * width, width, outputWidth,
+                  red, green, blue, 0);
+          for (int x = 0; x < outputWidth; x++) {
+            output[x] = Pixels.pack(toChannel(red[x]), toChannel(green[x]),
+                    toChannel(blue[x]));
+          }
+          destination.setPixels(rx, y + ry, outputWidth, 1, output, 0, outputWidth);
+        }
+      }
+    });
+  }
+
+  private static void convolveSeparable(double[] column, double[] row, Raster source,
+                                        Raster destination) {
+    int width = source.getWidth();
+    int rows = column.length;
+    int columns = row.length;
+    int rx = columns / 2;
+    int ry = rows / 2;
+    int outputWidth = width - columns + 1;
+    int bandHeight = Math.min(source.getTileHeight(), source.getHeight());
+
+    double[][] horizontal = {row};
+    PixelKernels kernels = PixelKernels.get();
+    ParallelEngine.forEachBand(source.getHeight() - rows + 1, bandHeight, (top, bottom) -> {
+      int[] input = new int[width];
+      int[] output = new int[outputWidth];
+      // The input rows of a band after the horizontal pass, one array per channel.
+      int lines = (bandHeight + rows - 1) * outputWidth;
+      double[] red = new double[lines];
+      double[] green = new double[lines];
+      double[] blue = new double[lines];
+      for (int first = top; first < bottom; first += bandHeight) {
+        int last = Math.min(bottom, first + bandHeight);
+
+        for (int i = 0; i < last - first + rows - 1; i++) {
+          source.getRow(first + i, input, 0);
+          kernels.correlate(horizontal, input, 0, width, outputWidth, red, green, blue,
+                  i * outputWidth);
+        }
+
+        for (int y = first; y < last; y++) {
+          for (int x = 0; x < outputWidth; x++) {
+            double r = 0.0;
+            double g = 0.0;
+            double b = 0.0;
+            int index = (y - first) * outputWidth + x;
+            for (int i = 0; i < rows; i++) {
+              r += column[i] * red[index];
+              g += column[i] * green[index];
+              b += column[i] * blue[index];
+              index += outputWidth;
+            }
+            output[x] = Pixels.pack(toChannel(r), toChannel(g), toChannel(b));
+          }
+          destination.setPixels(rx, y + ry, outputWidth, 1, output, 0, outputWidth);
+        }
+      }
+    });
+  }
+
+  // Applies the kernel by overlap-save: the image is cut into tiles, and every tile together
+  // with the margin the kernel needs around it is transformed, multiplied by the transform of the
+  // kernel and transformed back. Since the kernel is real, two channels are transformed at once,
+  // one as the real and one as the imaginary part.
+  private static void convolveFFT(double[][] kernel, Raster source, Raster destination) {
+    int width = source.getWidth();
+    int rows = kernel.length;
+    int columns = kernel[0].length;
+    int rx = columns / 2;
+    int ry = rows / 2;
+    int outputWidth = width - columns + 1;
+    FFT horizontal = new FFT(Math.max(MIN_FFT_SIZE, Integer.highestOneBit(2 * columns - 1) << 1));
+    FFT vertical = new FFT(Math.max(MIN_FFT_SIZE, Integer.highestOneBit(2 * rows - 1) << 1));
+    int fftWidth = horizontal.size;
+    int fftHeight = vertical.size;
+    int tileWidth = fftWidth - columns + 1;
+    int tileHeight = fftHeight - rows + 1;
+
+    // The sums are correlations with the kernel, which are products with the conjugate of its
+    // transform.
+    double[] kernelReal = new double[fftWidth * fftHeight];
+    double[] kernelImaginary = new double[fftWidth * fftHeight];
+    for (int i = 0; i < rows; i++) {
+      System.arraycopy(kernel[i], 0, kernelReal, i * fftWidth, columns);
+    }
+    transform(kernelReal, kernelImaginary, horizontal, vertical, false);
+
+    ParallelEngine.forEachBand(source.getHeight() - rows + 1, tileHeight, (top, bottom) -> {
+      int[] input = new int[fftWidth * fftHeight];
+      int[] output = new int[tileWidth * tileHeight];
+      // Red and green are transformed as the real and imaginary part of one grid.
+      double[] red = new double[fftWidth * fftHeight];
+      double[] green = new double[fftWidth * fftHeight];
+      double[] blue = new double[fftWidth * fftHeight];
+      double[] blueImaginary = new double[fftWidth * fftHeight];
+      double scale = 1.0 / (fftWidth * fftHeight);
+
+      for (int ty = top; ty < bottom; ty += tileHeight) {
+        int outputHeight = Math.min(tileHeight, bottom - ty);
+        int inputHeight = outputHeight + rows - 1;
+        for (int tx = 0; tx < outputWidth; tx += tileWidth) {
+          int outputTileWidth = Math.min(tileWidth, outputWidth - tx);
+          int inputWidth = outputTileWidth + columns - 1;
+          source.getPixels(tx, ty, inputWidth, inputHeight, input, 0, inputWidth);
+
+          Arrays.fill(red, 0.0);
+          Arrays.fill(green, 0.0);
+          Arrays.fill(blue, 0.0);
+          Arrays.fill(blueImaginary, 0.0);
+          for (int y = 0; y < inputHeight; y++) {
+            for (int x = 0; x < inputWidth; x++) {
+              int rgb = input[y * inputWidth + x];
+              int index = y * fftWidth + x;
+              red[index] = Pixels.red(rgb);
+              green[index] = Pixels.green(rgb);
+              blue[index] = Pixels.blue(rgb);
+            }
+          }
+          transform(red, green, horizontal, vertical, false);
+          transform(blue, blueImaginary, horizontal, vertical, false);
+          multiplyByConjugate(red, green, kernelReal, kernelImaginary);
+          multiplyByConjugate(blue, blueImaginary, kernelReal, kernelImaginary);
+          transform(red, green, horizontal, vertical, true);
+          transform(blue, blueImaginary, horizontal, vertical, true);
+
+          for (int y = 0; y < outputHeight; y++) {
+            for (int x = 0; x < outputTileWidth; x++) {
+              int index = y * fftWidth + x;
+              output[y * outputTileWidth + x] = Pixels.pack(toChannel(red[index] * scale),
+                      toChannel(green[index] * scale), toChannel(blue[index] * scale));
+            }
+          }
+          destination.setPixels(rx + tx, ry + ty, outputTileWidth, outputHeight, output, 0,
+                  outputTileWidth);
+        }
+      }
+    });
+  }
+
+  private static void multiplyByConjugate(double[] real, double[] imaginary,
+                                          double[] kernelReal, double[] kernelImaginary) {
+    for (int i = 0; i < real.length; i++) {
+      double a = real[i];
+      double b = imaginary[i];
+      real[i] = a * kernelReal[i] + b * kernelImaginary[i];
+      imaginary[i] = b * kernelReal[i] - a * kernelImaginary[i];
+    }
+  }
+
+  // Transforms a grid held row by row, first every row and then every column.
+  private static void transform(double[] real, double[] imaginary, FFT horizontal,
+                                FFT vertical, boolean inverse) {
+    for (int y = 0; y < vertical.size; y++) {
+      horizontal.transform(real, imaginary, y * horizontal.size, 1, inverse);
+    }
+    for (int x = 0; x < horizontal.size; x++) {
+      vertical.transform(real, imaginary, x, horizontal.size, inverse);
+    }
+  }
+
+  // An iterative radix-2 fast Fourier transform of a given size, which is a power of two. The
+  // inverse transform is not scaled.
+  private static class FFT {
+    final int size;
+    private final double[] cos;
+    private final double[] sin;
+    private final int[] reversed;
+
+    FFT(int size) {
+      this.size = size;
+      cos = new double[size / 2];
+      sin = new double[size / 2];
+      for (int k = 0; k < size / 2; k++) {
+        cos[k] = Math.cos(2 * Math.PI * k / size);
+        sin[k] = Math.sin(2 * Math.PI * k / size);
+      }
+      reversed = new int[size];
+      int bits = Integer.numberOfTrailingZeros(size);
+      for (int i = 0; i < size; i++) {
+        reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+      }
+    }
+
+    // Transforms the size values starting at offset that are stride apart, in place.
+    void transform(double[] real, double[] imaginary, int offset, int stride, boolean inverse) {
+      for (int i = 0; i < size; i++) {
+        int j = reversed[i];
+        if (i < j) {
+          int a = offset + i * stride;
+          int b = offset + j * stride;
+          double t = real[a];
+          real[a] = real[b];
+          real[b] = t;
+          t = imaginary[a];
+          imaginary[a] = imaginary[b];
+          imaginary[b] = t;
+        }
+      }
+      for (int length = 2; length <= size; length <<= 1) {
+        int half = length / 2;
+        int step = size / length;
+        for (int start = 0; start < size; start += length) {
+          for (int k = 0; k < half; k++) {
+            double c = cos[k * step];
+            double s = inverse ? sin[k * step] : -sin[k * step];
+            int a = offset + (start + k) * stride;
+            int b = a + half * stride;
+            double tr = real[b] * c - imaginary[b] * s;
+            double ti = real[b] * s + imaginary[b] * c;
+            real[b] = real[a] - tr;
+            imaginary[b] = imaginary[a] - ti;
+            real[a] += tr;
+            imaginary[a] += ti;
+          }
+        }
+      }
+    }
+  }
+}
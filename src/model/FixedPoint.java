@@ -0,0 +1,128 @@
+package model;
+
+/**
+ * Arithmetic on 16.16 fixed-point numbers, integers holding a value times 2^16, for the colour
+ * operations. The operations were written with double weights and truncate the result, so the
+ * fixed-point versions here give exactly the values the doubles give, not just close ones.
+ */
+final class FixedPoint {
+
+  static final int SHIFT = 16;
+  static final int ONE = 1 << SHIFT;
+
+  private FixedPoint() {
+  }
+
+  /**
+   * Converts a weight of a filter kernel, which must be a multiple of 2^-16 so that it is held
+   * exactly.
+   *
+   * @param weight the weight.
+   * @return the weight in fixed point.
+   * @throws IllegalArgumentException if the weight is not a multiple of 2^-16 or is too large.
+   */
+  static int of(double weight) throws IllegalArgumentException {
+    double scaled = weight * ONE;
+    if (scaled != Math.rint(scaled) || Math.abs(scaled) > Integer.MAX_VALUE / 256) {
+      throw new IllegalArgumentException("Weight " + weight + " has no exact fixed point value");
+    }
+    return (int) scaled;
+  }
+
+  /**
+   * Converts the weights of a filter kernel, see {@link #of(double)}.
+   *
+   * @param kernel the weights.
+   * @return the weights in fixed point.
+   * @throws IllegalArgumentException if a weight has no exact fixed point value, or if the sum of
+   *                                  the weights applied to 255 may overflow.
+   */
+  static int[][] of(double[][] kernel) throws IllegalArgumentException {
+    int[][] fixed = new int[kernel.length][];
+    long total = 0;
+    for (int i = 0; i < kernel.length; i++) {
+      fixed[i] = new int[kernel[i].length];
+      for (int j = 0; j < kernel[i].length; j++) {
+        fixed[i][j] = of(kernel[i][j]);
+        total += Math.abs(fixed[i][j]);
+      }
+    }
+    if (total * 255 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Kernel weights are too large for fixed point");
+    }
+    return fixed;
+  }
+
+  /**
+   * Truncates a fixed-point value to an integer in the same way as casting the double it stands
+   * for, once it is clamped to 0 to 255: values below 0 become 0 either way.
+   *
+   * @param value the value in fixed point.
+   * @return the whole part of the value, or a negative number if the value is negative.
+   */
+  static int toInt(int value) {
+    return value >> SHIFT;
+  }
+
+  /**
+   * Tabulates (int) (v * weight) for every channel value v, for operations that truncate every
+   * term of a sum on its own.
+   *
+   * @param weight the weight.
+   * @return the truncated terms, by channel value.
+   */
+  static int[] truncatedTerms(double weight) {
+    int[] terms = new int[256];
+    for (int v = 0; v < terms.length; v++) {
+      terms[v] = (int) (v * weight);
+    }
+    return terms;
+  }
+
+  /**
+   * A sum of the three channels of a pixel with weights that are not negative, truncated to an
+   * integer. The weighted channels are looked up in fixed point, which is only a close value of
+   * the double sum. Where the fixed-point sum is within its error of a whole number the
+   * truncated value could differ, so only there the sum is worked out in doubles.
+   */
+  static final class ChannelWeights {
+
+    // The fixed-point sum is at most 3 / 2 off, one half for rounding every weighted channel.
+    private static final int GUARD = 2;
+
+    private final double red;
+    private final double green;
+    private final double blue;
+    private final int[] redTable = new int[256];
+    private final int[] greenTable = new int[256];
+    private final int[] blueTable = new int[256];
+
+    ChannelWeights(double red, double green, double blue) {
+      this.red = red;
+      this.green = green;
+      this.blue = blue;
+      for (int v = 0; v < 256; v++) {
+        redTable[v] = (int) Math.round(v * red * ONE);
+        greenTable[v] = (int) Math.round(v * green * ONE);
+        blueTable[v] = (int) Math.round(v * blue * ONE);
+      }
+    }
+
+    /**
+     * Gets (int) (red * r + green * g + blue * b), as worked out in doubles.
+     *
+     * @param r the red channel.
+     * @param g the green channel.
+     * @param b the blue channel.
+     * @return the truncated weighted sum.
+     */
+    int truncate(int r, int g, int b) {
+      int sum = redTable[r] + greenTable[g] + blueTable[b];
+      int fraction = sum & (ONE - 1);
+      if (fraction < GUARD || fraction > ONE - GUARD) {
+        return (int) (red * r + green * g + blue * b);
+      }
+      return sum >> SHIFT;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import utility.Pixels;
+import utility.raster.OffHeapRaster;
+import utility.raster.Raster;
+import utility.raster.Rasters;
+
+/**
+ * Reads and writes the native .ime format, which holds the pixels of an image exactly as they
+ * are kept in memory, so that an image saved between the steps of a job costs no encoding or
+ * decoding. A file starts with a 16 byte header: the magic bytes "IME1", then the width, the
+ * height and a reserved 0 as 4 byte little-endian ints. The pixels follow, row after row, as
+ * little-endian ints packed as 0xRRGGBB.
+ */
+class IMEFormat {
+
+  static final int HEADER_SIZE = 16;
+  private static final byte[] MAGIC = {'I', 'M', 'E', '1'};
+
+  private IMEFormat() {
+  }
+
+  /**
+   * Reads the width and height from the header of a file.
+   *
+   * @param header the first bytes of the file.
+   * @param length the number of bytes in the header array.
+   * @return the width and height.
+   * @throws IllegalArgumentException if the header is not valid.
+   */
+  static int[] readHeader(byte[] header, int length) throws IllegalArgumentException {
+    if (length < HEADER_SIZE || header[0] != MAGIC[0] || header[1] != MAGIC[1]
+            || header[2] != MAGIC[2] || header[3] != MAGIC[3]) {
+      throw new IllegalArgumentException("Invalid IME file: file should begin with IME1");
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+    int width = buffer.getInt(4);
+    int height = buffer.getInt(8);
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException("Invalid IME file: negative image size");
+    }
+    return new int[]{width, height};
+  }
+
+  /**
+   * Maps the pixels of a file into an off-heap raster without reading them.
+   *
+   * @param path the path of the file.
+   * @return the pixels.
+   * @throws IllegalArgumentException if the file is not valid.
+   */
+  static Pixels map(Path path) throws IllegalArgumentException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // Keep reading until the header is complete or the file ends.
+      }
+      int[] size = readHeader(header.array(), header.position());
+      if (channel.size() < HEADER_SIZE + 4L * size[0] * size[1]) {
+        throw new IllegalArgumentException("Invalid IME file: unexpected end of file");
+      }
+      // The mapping stays valid once the channel is closed.
+      return new Pixels(OffHeapRaster.map(channel, HEADER_SIZE, size[0], size[1],
+              ByteOrder.LITTLE_ENDIAN));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reads the pixels of a file from a stream into a raster of the default backend.
+   *
+   * @param in the stream.
+   * @return the pixels.
+   * @throws IllegalArgumentException if the file is not valid.
+   */
+  static Pixels read(InputStream in) throws IllegalArgumentException {
+    try {
+      byte[] header = new byte[HEADER_SIZE];
+      int[] size = readHeader(header, readFully(in, header));
+      Raster raster = Rasters.create(size[0], size[1]);
+      ByteBuffer bytes = ByteBuffer.allocate(size[0] * 4).order(ByteOrder.LITTLE_ENDIAN);
+      IntBuffer ints = bytes.asIntBuffer();
+      int[] row = new int[size[0]];
+      for (int y = 0; y < size[1]; y++) {
+        if (readFully(in, bytes.array()) < bytes.capacity()) {
+          throw new IllegalArgumentException("Invalid IME file: unexpected end of file");
+        }
+        ints.get(0, row);
+        raster.setRow(y, row, 0);
+      }
+      return new Pixels(raster);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static int readFully(InputStream in, byte[] bytes) throws IOException {
+    int filled = 0;
+    while (filled < bytes.length) {
+      int count = in.read(bytes, filled, bytes.length - filled);
+      if (count < 0) {
+        break;
+      }
+      filled += count;
+    }
+    return filled;
+  }
+
+  /**
+   * Writes a file.
+   *
+   * @param obj the image.
+   * @param out the stream to write to.
+   * @throws IOException if the stream cannot be written.
+   */
+  static void write(Pixels obj, OutputStream out) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.put(MAGIC).putInt(obj.width).putInt(obj.height).putInt(0);
+    out.write(header.array());
+
+    ByteBuffer bytes = ByteBuffer.allocate(obj.width * 4).order(ByteOrder.LITTLE_ENDIAN);
+    IntBuffer ints = bytes.asIntBuffer();
+    int[] row = new int[obj.width];
+    for (int y = 0; y < obj.height; y++) {
+      obj.raster.getRow(y, row, 0);
+      ints.put(0, row);
+      out.write(bytes.array());
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package model;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Map;
+
+import utility.EncodedImageStream;
+import utility.FileSourceStream;
+import utility.ImageUtil;
+import utility.Pixels;
+import utility.raster.Raster;
+import utility.raster.Rasters;
+
+/**
+ * This class extends the AbstractImageManipulationsModel class.
+ * It loads and saves images in the native .ime format, which is meant for the images saved
+ * between the steps of a job. Loading a file maps it into memory, so it takes no time whatever
+ * the size of the image.
+ */
+public class IMEImageManipulationsModel extends AbstractImageManipulationsModel {
+
+  private static IMEImageManipulationsModel instance = null;
+
+  /**
+   * Creates a model working on the images of a session.
+   *
+   * @param session the session holding the images.
+   */
+  protected IMEImageManipulationsModel(ImageSession session) {
+    super(session);
+  }
+
+  /**
+   * Singleton design pattern.
+   *
+   * @return the class object.
+   */
+  public static synchronized IMEImageManipulationsModel getInstance() {
+    if (instance == null) {
+      instance = new IMEImageManipulationsModel(ImageSession.getDefault());
+    }
+
+    return instance;
+  }
+
+  @Override
+  public boolean loadImage(String imagePath, String imageName, OutputStream out)
+          throws IllegalArgumentException {
+    InputStream in = ImageUtil.getInputData(imagePath);
+    if (in == null) {
+      throw new IllegalArgumentException("Invalid Input Stream!");
+    }
+
+    Pixels properties;
+    try {
+      // A file that can only be read cannot be mapped privately, so it is read instead.
+      if (in instanceof FileSourceStream
+              && Files.isWritable(((FileSourceStream) in).getPath())) {
+        properties = IMEFormat.map(((FileSourceStream) in).getPath());
+      } else {
+        properties = IMEFormat.read(in);
+      }
+    } finally {
+      try {
+        in.close();
+      } catch (IOException e) {
+        // Nothing more to read from it either way.
+      }
+    }
+
+    Map<String, String> options = ImageUtil.getOptions(imagePath);
+    if (!options.isEmpty()) {
+      properties = crop(properties, ImageUtil.getRegion(options, properties.width,
+              properties.height), ImageUtil.getScale(options));
+    }
+    imageNamePropertiesMap.put(imageName, properties);
+    return true;
+  }
+
+  // Copies every step-th pixel of every step-th row of a region into a new image. Only the
+  // pages of the mapped file holding those rows are read.
+  private static Pixels crop(Pixels obj, Rectangle region, int step) {
+    Raster raster = Rasters.create((region.width + step - 1) / step,
+            (region.height + step - 1) / step);
+    int[] source = new int[region.width];
+    int[] row = new int[raster.getWidth()];
+    for (int k = 0; k < raster.getHeight(); k++) {
+      obj.raster.getPixels(region.x, region.y + k * step, region.width, 1, source, 0,
+              region.width);
+      for (int x = 0; x < row.length; x++) {
+        row[x] = source[x * step];
+      }
+      raster.setRow(k, row, 0);
+    }
+    return new Pixels(raster);
+  }
+
+  @Override
+  public boolean saveImage(String imagePath, String imageName, OutputStream out)
+          throws IllegalArgumentException {
+    checkIfImagePresentInMap(imageName);
+
+    // The file is encoded when it is written, straight into the file.
+    Pixels obj = imageNamePropertiesMap.get(imageName);
+    ImageUtil.setInputData(imagePath, new EncodedImageStream(o -> IMEFormat.write(obj, o)));
+    return true;
+  }
+}
@@ -123,4 +123,20 @@ public interface ImageManipulationsModel {
    * @param imageName the name of the image to obtain properties.
    */
   Pixels getImageNameProperties(String imageName);
+
+  /**
+   * Checks whether an image is loaded.
+   *
+   * @param imageName the name of the image.
+   * @return true if an image of this name is loaded.
+   */
+  boolean containsImage(String imageName);
+
+  /**
+   * Releases an image that is no longer needed, freeing the memory it holds.
+   * Releasing an image that is not loaded does nothing.
+   *
+   * @param imageName the name of the image to release.
+   */
+  void releaseImage(String imageName);
 }
\ No newline at end of file
@@ -2,15 +2,55 @@ package model;
 
 /**
  * Factory class for returning the model object based on extension.
+ * All the models returned by one factory work on the images of the same session.
  */
 public class ImageManipulationsModelFactory implements IImageManipulationsModelFactory {
 
+  private final ImageSession session;
+  private final PPMImageManipulationsModel ppmModel;
+  private final ConventionalImageManipulationsModel conventionalModel;
+  private final IMEImageManipulationsModel imeModel;
+  private final QOIImageManipulationsModel qoiModel;
+
+  /**
+   * Creates a factory returning the singleton models of the default session.
+   */
+  public ImageManipulationsModelFactory() {
+    this.session = ImageSession.getDefault();
+    this.ppmModel = PPMImageManipulationsModel.getInstance();
+    this.conventionalModel = ConventionalImageManipulationsModel.getInstance();
+    this.imeModel = IMEImageManipulationsModel.getInstance();
+    this.qoiModel = QOIImageManipulationsModel.getInstance();
+  }
+
+  /**
+   * Creates a factory returning models of their own that work on the images of a session.
+   * Use a separate session for every script that may run at the same time as another.
+   *
+   * @param session the session holding the images.
+   */
+  public ImageManipulationsModelFactory(ImageSession session) {
+    this.session = session;
+    this.ppmModel = new PPMImageManipulationsModel(session);
+    this.conventionalModel = new ConventionalImageManipulationsModel(session);
+    this.imeModel = new IMEImageManipulationsModel(session);
+    this.qoiModel = new QOIImageManipulationsModel(session);
+  }
+
+  public ImageSession getSession() {
+    return session;
+  }
+
   @Override
   public <T extends ImageManipulationsModel> T getModel(String fileExtension) {
-    if (fileExtension.equalsIgnoreCase("ppm")) {
-      return (T) PPMImageManipulationsModel.getInstance();
+    if (fileExtension.equalsIgnoreCase("ppm") || fileExtension.equalsIgnoreCase("pgm")) {
+      return (T) ppmModel;
+    } else if (fileExtension.equalsIgnoreCase("ime")) {
+      return (T) imeModel;
+    } else if (fileExtension.equalsIgnoreCase("qoi")) {
+      return (T) qoiModel;
     } else {
-      return (T) ConventionalImageManipulationsModel.getInstance();
+      return (T) conventionalModel;
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,412 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import utility.Pixels;
+import utility.raster.Raster;
+import utility.raster.RasterBackend;
+
+/**
+ * Maps the image names used in the program to their pixels, keeping the images that are held in
+ * memory within a budget. When the budget is exceeded the least recently used images are
+ * written to a local spill file and dropped from memory; they are read back transparently the
+ * next time they are asked for. The budget is unlimited unless the system property
+ * {@code ime.registry.budget} sets one, in bytes or with a k, m or g suffix.
+ *
+ * <p>The space that removed and replaced images held in the spill file is reused for the images
+ * spilled after them, and the file is shortened when that space is at its end, so the file does
+ * not grow beyond the largest set of images that were spilled at the same time.
+ *
+ * <p>A registry may be used from several threads at once. Lookups and updates of different
+ * images do not block each other; only spilling and reading back an image take a lock.
+ */
+public class ImageRegistry {
+
+  // An image known to the registry. Exactly one of pixels and spillOffset is in use at a time,
+  // except that an image read back from the spill file keeps its slot, since the pixels of a
+  // registered image are never modified and the slot can be reused when it is evicted again.
+  // The fields of an entry other than pixels and lastAccess are only changed while holding the
+  // lock of the entry.
+  private static class Entry {
+    volatile Pixels pixels;
+    volatile long lastAccess;
+    long spillOffset = -1;
+    boolean removed;
+    final int width;
+    final int height;
+    final RasterBackend backend;
+    // The size of the raster while it is resident, which can change when it is read back.
+    long size;
+
+    Entry(Pixels pixels) {
+      this.pixels = pixels;
+      this.width = pixels.width;
+      this.height = pixels.height;
+      this.backend = pixels.raster.getBackend();
+      this.size = pixels.raster.getSizeInBytes();
+    }
+  }
+
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong clock = new AtomicLong();
+  private final AtomicLong residentBytes = new AtomicLong();
+  private final Object evictionLock = new Object();
+  private volatile long budget;
+  // Only changed while holding the eviction lock.
+  private volatile FileChannel spillFile;
+  private long spillEnd;
+  // The regions of the spill file no image uses, by offset and length. Adjacent regions are
+  // merged when they are freed. Only used while holding the eviction lock.
+  private final TreeMap<Long, Long> freeRegions = new TreeMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder spills = new LongAdder();
+
+  /**
+   * Creates a registry with the budget given by the {@code ime.registry.budget} property.
+   */
+  public ImageRegistry() {
+    this(parseSize(System.getProperty("ime.registry.budget")));
+  }
+
+  /**
+   * Creates a registry with an explicit budget.
+   *
+   * @param budget the number of bytes of pixels to keep in memory.
+   */
+  public ImageRegistry(long budget) {
+    this.budget = budget;
+  }
+
+  /**
+   * Parses a size such as 512m into bytes.
+   *
+   * @param size the size, or null for no limit.
+   * @return the number of bytes.
+   */
+  static long parseSize(String size) throws IllegalArgumentException {
+    if (size == null || size.isEmpty()) {
+      return Long.MAX_VALUE;
+    }
+    String number = size.trim().toLowerCase();
+    long unit = 1;
+    switch (number.charAt(number.length() - 1)) {
+      case 'k':
+        unit = 1L << 10;
+        break;
+      case 'm':
+        unit = 1L << 20;
+        break;
+      case 'g':
+        unit = 1L << 30;
+        break;
+      default:
+        break;
+    }
+    if (unit != 1) {
+      number = number.substring(0, number.length() - 1);
+    }
+    try {
+      return Long.parseLong(number) * unit;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid memory budget " + size);
+    }
+  }
+
+  /**
+   * Changes the budget, spilling images right away if they no longer fit.
+   *
+   * @param budget the number of bytes of pixels to keep in memory.
+   */
+  public void setMemoryBudget(long budget) {
+    this.budget = budget;
+    evict(null);
+  }
+
+  public long getMemoryBudget() {
+    return budget;
+  }
+
+  public boolean containsKey(String imageName) {
+    return entries.containsKey(imageName);
+  }
+
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * Gets an image, reading it back from the spill file if it was spilled.
+   *
+   * @param imageName the name of the image.
+   * @return the pixels of the image, or null if there is no such image.
+   */
+  public Pixels get(String imageName) {
+    Entry entry = entries.get(imageName);
+    if (entry == null) {
+      return null;
+    }
+    entry.lastAccess = clock.incrementAndGet();
+    Pixels pixels = entry.pixels;
+    if (pixels != null) {
+      hits.increment();
+      return pixels;
+    }
+
+    synchronized (entry) {
+      if (entry.removed) {
+        // Its slot may already hold another image.
+        return null;
+      }
+      pixels = entry.pixels;
+      if (pixels == null) {
+        misses.increment();
+        pixels = readBack(entry);
+        entry.pixels = pixels;
+        entry.size = pixels.raster.getSizeInBytes();
+        residentBytes.addAndGet(entry.size);
+      } else {
+        hits.increment();
+      }
+    }
+    evict(entry);
+    return pixels;
+  }
+
+  /**
+   * Adds an image, replacing any image registered before under the same name.
+   *
+   * @param imageName the name of the image.
+   * @param pixels    the pixels of the image.
+   */
+  public void put(String imageName, Pixels pixels) {
+    Entry entry = new Entry(pixels);
+    entry.lastAccess = clock.incrementAndGet();
+    residentBytes.addAndGet(entry.size);
+    release(entries.put(imageName, entry));
+    evict(entry);
+  }
+
+  /**
+   * Removes an image. The space it held in the spill file is reused by later spills.
+   *
+   * @param imageName the name of the image.
+   */
+  public void remove(String imageName) {
+    release(entries.remove(imageName));
+  }
+
+  private void release(Entry entry) {
+    if (entry == null) {
+      return;
+    }
+    long offset;
+    synchronized (entry) {
+      entry.removed = true;
+      if (entry.pixels != null) {
+        entry.pixels = null;
+        residentBytes.addAndGet(-entry.size);
+      }
+      offset = entry.spillOffset;
+      entry.spillOffset = -1;
+    }
+    if (offset >= 0) {
+      synchronized (evictionLock) {
+        free(offset, slotSize(entry.width, entry.height));
+      }
+    }
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getSpills() {
+    return spills.sum();
+  }
+
+  public long getResidentBytes() {
+    return residentBytes.get();
+  }
+
+  /**
+   * Gets the length of the spill file, including the space no image uses at the moment.
+   *
+   * @return the length of the spill file in bytes, or 0 if nothing was spilled.
+   */
+  public long getSpillFileSize() {
+    synchronized (evictionLock) {
+      return spillEnd;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "hits=" + getHits() + ", misses=" + getMisses() + ", spills=" + getSpills()
+            + ", resident=" + getResidentBytes() + " bytes";
+  }
+
+  // Spills the least recently used images until the resident ones fit in the budget.
+  // The image that is being accessed is never spilled.
+  private void evict(Entry keep) {
+    if (residentBytes.get() <= budget) {
+      return;
+    }
+    synchronized (evictionLock) {
+      while (residentBytes.get() > budget) {
+        Entry victim = null;
+        for (Entry entry : entries.values()) {
+          if (entry != keep && entry.pixels != null
+                  && (victim == null || entry.lastAccess < victim.lastAccess)) {
+            victim = entry;
+          }
+        }
+        if (victim == null) {
+          return;
+        }
+        synchronized (victim) {
+          Pixels pixels = victim.pixels;
+          if (pixels != null && !victim.removed) {
+            if (victim.spillOffset < 0) {
+              victim.spillOffset = write(pixels.raster);
+              spills.increment();
+            }
+            victim.pixels = null;
+            residentBytes.addAndGet(-victim.size);
+          }
+        }
+      }
+    }
+  }
+
+  // Opens the spill file the first time an image is spilled, under the eviction lock.
+  private FileChannel spillFile() throws IOException {
+    if (spillFile == null) {
+      Path path = Files.createTempFile("ime-spill", ".raw");
+      path.toFile().deleteOnExit();
+      spillFile = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+              StandardOpenOption.DELETE_ON_CLOSE);
+    }
+    return spillFile;
+  }
+
+  private static long slotSize(int width, int height) {
+    return (long) width * height * 4;
+  }
+
+  // Finds room for a slot, taking the first free region that is large enough or else the end
+  // of the file. Called under the eviction lock.
+  private long allocate(long length) {
+    for (Map.Entry<Long, Long> region : freeRegions.entrySet()) {
+      if (region.getValue() >= length) {
+        long offset = region.getKey();
+        freeRegions.remove(offset);
+        if (region.getValue() > length) {
+          freeRegions.put(offset + length, region.getValue() - length);
+        }
+        return offset;
+      }
+    }
+    long offset = spillEnd;
+    spillEnd += length;
+    return offset;
+  }
+
+  // Returns a slot to the free regions, merging it with its neighbours, and shortens the file
+  // if the slot ends up at its end. Called under the eviction lock.
+  private void free(long offset, long length) {
+    Map.Entry<Long, Long> before = freeRegions.floorEntry(offset);
+    if (before != null && before.getKey() + before.getValue() == offset) {
+      freeRegions.remove(before.getKey());
+      offset = before.getKey();
+      length += before.getValue();
+    }
+    Long after = freeRegions.remove(offset + length);
+    if (after != null) {
+      length += after;
+    }
+    if (offset + length == spillEnd) {
+      spillEnd = offset;
+      try {
+        spillFile.truncate(spillEnd);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not shrink the spill file", e);
+      }
+    } else {
+      freeRegions.put(offset, length);
+    }
+  }
+
+  // Writes the pixels of a raster to a free slot of the spill file, row by row, and returns
+  // the offset of the slot.
+  private long write(Raster raster) {
+    int width = raster.getWidth();
+    long offset = allocate(slotSize(width, raster.getHeight()));
+    try {
+      FileChannel channel = spillFile();
+      ByteBuffer buffer = ByteBuffer.allocateDirect(width * 4).order(ByteOrder.nativeOrder());
+      IntBuffer ints = buffer.asIntBuffer();
+      int[] row = new int[width];
+      long position = offset;
+      for (int y = 0; y < raster.getHeight(); y++) {
+        raster.getRow(y, row, 0);
+        ints.clear();
+        ints.put(row);
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+          position += channel.write(buffer, position);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not spill image to disk", e);
+    }
+    return offset;
+  }
+
+  // Reads a spilled image back. Positional reads let several images be read at once.
+  private Pixels readBack(Entry entry) {
+    Raster raster = entry.backend.create(entry.width, entry.height);
+    try {
+      FileChannel channel = spillFile;
+      ByteBuffer buffer = ByteBuffer.allocateDirect(entry.width * 4)
+              .order(ByteOrder.nativeOrder());
+      IntBuffer ints = buffer.asIntBuffer();
+      int[] row = new int[entry.width];
+      long position = entry.spillOffset;
+      for (int y = 0; y < entry.height; y++) {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+          int read = channel.read(buffer, position);
+          if (read < 0) {
+            throw new IOException("Spill file is truncated");
+          }
+          position += read;
+        }
+        ints.clear();
+        ints.get(row);
+        raster.setRow(y, row, 0);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read spilled image back", e);
+    }
+    return new Pixels(raster);
+  }
+}
@@ -0,0 +1,42 @@
+package model;
+
+/**
+ * A session groups the images of one user of the program, such as a single script run. Every
+ * session has its own registry, so images loaded in one session are never seen or replaced by
+ * another, and sessions can run at the same time on different threads.
+ */
+public class ImageSession {
+
+  private static final ImageSession DEFAULT = new ImageSession();
+
+  private final ImageRegistry registry;
+
+  /**
+   * Creates a session with an empty registry using the default memory budget.
+   */
+  public ImageSession() {
+    this(new ImageRegistry());
+  }
+
+  /**
+   * Creates a session around a given registry.
+   *
+   * @param registry the registry holding the images of the session.
+   */
+  public ImageSession(ImageRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Gets the session shared by the singleton models.
+   *
+   * @return the default session.
+   */
+  public static ImageSession getDefault() {
+    return DEFAULT;
+  }
+
+  public ImageRegistry getRegistry() {
+    return registry;
+  }
+}
@@ -50,4 +50,19 @@ public interface NewImageManipulationsModel extends ImageManipulationsModel {
    */
   void sharpen(String imageName,
                String destinationImageName) throws IllegalArgumentException;
+
+  /**
+   * Creates an image by convolving an image with a kernel of any odd size. The kernel is
+   * centred on every pixel, and the pixels too close to the border for it to fit are black.
+   * Every channel is the weighted sum of the pixels under the kernel plus 1e-6, truncated and
+   * clamped to 0 to 255, so sums that should be whole numbers are not truncated down by
+   * rounding errors.
+   *
+   * @param kernel               the weights of the kernel, by row and then column.
+   * @param imageName            the name of the image that we need to convolve.
+   * @param destinationImageName the name of the image after convolving.
+   * @throws IllegalArgumentException if the image is not loaded or the kernel is not valid.
+   */
+  void convolve(double[][] kernel, String imageName,
+                String destinationImageName) throws IllegalArgumentException;
 }
\ No newline at end of file
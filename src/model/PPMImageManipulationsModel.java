@@ -1,10 +1,13 @@
 package model;
 
-import java.io.ByteArrayInputStream;
+import java.awt.Rectangle;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Scanner;
+import java.util.Map;
 
+import utility.EncodedImageStream;
+import utility.FileSourceStream;
 import utility.ImageUtil;
 import utility.Pixels;
 
@@ -17,21 +20,22 @@ public class PPMImageManipulationsModel extends AbstractImageManipulationsModel
   private static PPMImageManipulationsModel instance = null;
 
   /**
-   * Constructor of ImageManipulationsModel.
-   * It only role right now is to initialize the hash-map.
+   * Creates a model working on the images of a session.
+   *
+   * @param session the session holding the images.
    */
-  protected PPMImageManipulationsModel() {
-    super();
+  protected PPMImageManipulationsModel(ImageSession session) {
+    super(session);
   }
 
   /**
-   * Single-ton design pattern.
+   * Singleton design pattern.
    *
    * @return the class object.
    */
-  public static PPMImageManipulationsModel getInstance() {
+  public static synchronized PPMImageManipulationsModel getInstance() {
     if (instance == null) {
-      instance = new PPMImageManipulationsModel();
+      instance = new PPMImageManipulationsModel(ImageSession.getDefault());
     }
 
     return instance;
@@ -52,22 +56,47 @@ public class PPMImageManipulationsModel extends AbstractImageManipulationsModel
       throw new IllegalArgumentException("Invalid Input Stream!");
     }
 
-    Scanner sc = new Scanner(in);
-    String token = sc.next();
-    if (!token.equals("P3")) {
-      throw new IllegalArgumentException("Invalid PPM file: plain RAW file should begin with P3");
-    }
-    int width = sc.nextInt();
-    int height = sc.nextInt();
-    int maxValue = sc.nextInt();
-    Pixels properties = new Pixels(width, height);
-
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        int r = sc.nextInt();
-        int g = sc.nextInt();
-        int b = sc.nextInt();
-        properties.listOfPixels[j][i] = r + " " + g + " " + b;
+    Pixels properties;
+    try {
+      PPMReader reader = new PPMReader(in);
+      String magic = reader.readMagic();
+      int channels = magic.equals("P3") || magic.equals("P6") ? 3 : 1;
+      int[] header;
+      // Only the region and scale asked for are kept, and the rows in between are skipped.
+      Map<String, String> options = ImageUtil.getOptions(imagePath);
+      Rectangle region;
+      int step = ImageUtil.getScale(options);
+      switch (magic) {
+        case "P3":
+        case "P2":
+          header = reader.readHeader();
+          region = ImageUtil.getRegion(options, header[0], header[1]);
+          properties = reader.readPlain(header[0], header[1], header[2], channels, region,
+                  step);
+          break;
+        case "P6":
+        case "P5":
+          header = reader.readHeader();
+          region = ImageUtil.getRegion(options, header[0], header[1]);
+          reader.skipSingleWhitespace();
+          if (in instanceof FileSourceStream) {
+            // Map the pixels straight from the file rather than streaming them.
+            properties = PPMReader.mapRaw(((FileSourceStream) in).getPath(), reader.getOffset(),
+                    header[0], header[1], header[2], channels, region, step);
+          } else {
+            properties = reader.readRaw(header[0], header[1], header[2], channels, region,
+                    step);
+          }
+          break;
+        default:
+          throw new IllegalArgumentException(
+                  "Invalid PPM file: file should begin with P3, P6, P2 or P5");
+      }
+    } finally {
+      try {
+        in.close();
+      } catch (IOException e) {
+        // Nothing more to read from it either way.
       }
     }
 
@@ -82,24 +111,19 @@ public class PPMImageManipulationsModel extends AbstractImageManipulationsModel
     checkIfImagePresentInMap(imageName);
 
     Pixels obj = imageNamePropertiesMap.get(imageName);
-    StringBuilder builder = new StringBuilder();
-    builder.append("P3\n");
-    builder.append(obj.width).append(" ").append(obj.height).append("\n");
-    builder.append(255 + "\n");
-
-    for (int y = 0; y < obj.height; y++) {
-      for (int x = 0; x < obj.width; x++) {
-        String[] arr = obj.listOfPixels[x][y].split(" ");
-        builder.append(arr[0]).append(" ");
-        builder.append(arr[1]).append(" ");
-        builder.append(arr[2]).append(" ");
-      }
-      builder.append("\n");
+    // A .pgm file holds the luma-component greyscale of the image. Binary files are written
+    // when asked for with the binary option, and always for .pgm files.
+    boolean grey = ImageUtil.getFileExtension(imagePath).equalsIgnoreCase("pgm");
+    boolean binary = grey || ImageUtil.getOptions(imagePath).containsKey("binary");
+    // The file is encoded when it is written, straight into the file.
+    if (binary) {
+      ImageUtil.setInputData(imagePath,
+              new EncodedImageStream(o -> PPMWriter.writeRaw(obj, grey, o)));
+    } else {
+      ImageUtil.setInputData(imagePath,
+              new EncodedImageStream(o -> PPMWriter.writePlain(obj, o)));
     }
 
-    InputStream inputStream = new ByteArrayInputStream(builder.toString().getBytes());
-    ImageUtil.setInputData(imagePath, inputStream);
-
     return true;
   }
 }
\ No newline at end of file
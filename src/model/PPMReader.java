@@ -0,0 +1,355 @@
+package model;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import utility.Pixels;
+
+/**
+ * Reads a PPM or PGM image from a stream in a single pass. The stream is read through a buffer
+ * of its own and the numbers are parsed straight from the bytes, one row of pixels at a time.
+ * Comments, from a # to the end of the line, may appear anywhere whitespace may in the header
+ * and in plain (P3 and P2) files. The pixels of binary (P6 and P5) files can also be mapped
+ * straight from the file.
+ */
+class PPMReader {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final InputStream in;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  // The number of bytes of the stream that came before the buffer.
+  private long bufferOffset;
+
+  PPMReader(InputStream in) {
+    this.in = in;
+  }
+
+  // Returns the next byte without consuming it, or -1 at the end of the stream.
+  private int peek() {
+    if (position == limit) {
+      bufferOffset += limit;
+      try {
+        limit = in.read(buffer, 0, buffer.length);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        return -1;
+      }
+    }
+    return buffer[position] & 0xFF;
+  }
+
+  // Skips whitespace and comments.
+  private void skipSeparators() {
+    int c = peek();
+    while (c != -1) {
+      if (c == '#') {
+        while (c != -1 && c != '\n' && c != '\r') {
+          position++;
+          c = peek();
+        }
+      } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0B) {
+        position++;
+        c = peek();
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reads the magic number at the start of the file, such as P3.
+   *
+   * @return the magic number.
+   */
+  String readMagic() {
+    skipSeparators();
+    StringBuilder magic = new StringBuilder();
+    int c = peek();
+    while (c != -1 && magic.length() < 2) {
+      magic.append((char) c);
+      position++;
+      c = peek();
+    }
+    return magic.toString();
+  }
+
+  /**
+   * Reads the next number written out in ASCII.
+   *
+   * @return the number.
+   * @throws IllegalArgumentException if the next token is not a number.
+   */
+  int readInt() throws IllegalArgumentException {
+    skipSeparators();
+    int c = peek();
+    boolean negative = c == '-';
+    if (negative || c == '+') {
+      position++;
+      c = peek();
+    }
+    if (c < '0' || c > '9') {
+      if (c == -1) {
+        throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+      }
+      throw new IllegalArgumentException("Invalid PPM file: expected a number");
+    }
+    long value = 0;
+    while (c >= '0' && c <= '9') {
+      value = Math.min(value * 10 + (c - '0'), Integer.MAX_VALUE);
+      position++;
+      c = peek();
+    }
+    return (int) (negative ? -value : value);
+  }
+
+  /**
+   * Reads the width, height and maximum value that follow the magic number.
+   *
+   * @return the width, height and maximum value.
+   * @throws IllegalArgumentException if the header is not valid.
+   */
+  int[] readHeader() throws IllegalArgumentException {
+    int width = readInt();
+    int height = readInt();
+    int maxValue = readInt();
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException("Invalid PPM file: negative image size");
+    }
+    if (maxValue < 1 || maxValue > 65535) {
+      throw new IllegalArgumentException("Invalid PPM file: maximum value must be from 1 to "
+              + "65535");
+    }
+    return new int[]{width, height, maxValue};
+  }
+
+  /**
+   * Gets the position in the stream of the next byte to be read.
+   *
+   * @return the number of bytes read so far.
+   */
+  long getOffset() {
+    return bufferOffset + position;
+  }
+
+  /**
+   * Reads the single whitespace byte that separates the header of a binary file from its
+   * pixels.
+   *
+   * @throws IllegalArgumentException if the next byte is not whitespace.
+   */
+  void skipSingleWhitespace() throws IllegalArgumentException {
+    int c = peek();
+    if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != '\f' && c != 0x0B) {
+      throw new IllegalArgumentException("Invalid PPM file: missing whitespace after header");
+    }
+    position++;
+  }
+
+  /**
+   * Reads the pixels of a plain image, scaling the values from 0 to maxValue onto 0 to
+   * 255. Values outside that range are clamped. Only the pixels of a region are kept, and of
+   * those only every step-th pixel of every step-th row; reading stops after the last row that
+   * is kept.
+   *
+   * @param width    the width of the image.
+   * @param height   the height of the image.
+   * @param maxValue the maximum value given in the header.
+   * @param channels 3 for a colour (P3) image or 1 for a grey (P2) image.
+   * @param region   the region of the image to keep.
+   * @param step     the distance between the pixels kept.
+   * @return the pixels.
+   */
+  Pixels readPlain(int width, int height, int maxValue, int channels, Rectangle region,
+                   int step) {
+    Pixels properties = new Pixels(outputSize(region.width, step),
+            outputSize(region.height, step));
+    int[] row = new int[properties.width];
+    int lastRow = region.y + (properties.height - 1) * step;
+    int lastColumn = region.x + (properties.width - 1) * step;
+    for (int y = 0; y <= lastRow; y++) {
+      boolean keepRow = y >= region.y && (y - region.y) % step == 0;
+      for (int x = 0; x < width; x++) {
+        int rgb;
+        if (channels == 3) {
+          int r = scale(readInt(), maxValue);
+          int g = scale(readInt(), maxValue);
+          int b = scale(readInt(), maxValue);
+          rgb = Pixels.pack(r, g, b);
+        } else {
+          int grey = scale(readInt(), maxValue);
+          rgb = Pixels.pack(grey, grey, grey);
+        }
+        if (keepRow && x >= region.x && x <= lastColumn && (x - region.x) % step == 0) {
+          row[(x - region.x) / step] = rgb;
+        }
+      }
+      if (keepRow) {
+        properties.raster.setRow((y - region.y) / step, row, 0);
+      }
+    }
+    return properties;
+  }
+
+  /**
+   * Reads the pixels of a binary image from the stream, keeping the pixels in the same way as
+   * {@link #readPlain}. The bytes of rows that are not kept are skipped without being decoded.
+   *
+   * @param width    the width of the image.
+   * @param height   the height of the image.
+   * @param maxValue the maximum value given in the header.
+   * @param channels 3 for a colour (P6) image or 1 for a grey (P5) image.
+   * @param region   the region of the image to keep.
+   * @param step     the distance between the pixels kept.
+   * @return the pixels.
+   * @throws IllegalArgumentException if the stream ends before all the pixels are read.
+   */
+  Pixels readRaw(int width, int height, int maxValue, int channels, Rectangle region, int step)
+          throws IllegalArgumentException {
+    Pixels properties = new Pixels(outputSize(region.width, step),
+            outputSize(region.height, step));
+    int pixelBytes = pixelBytes(maxValue, channels);
+    byte[] bytes = new byte[width * pixelBytes];
+    int[] row = new int[properties.width];
+    for (int k = 0; k < properties.height; k++) {
+      int y = region.y + k * step;
+      // Skip the rows up to the next one that is kept.
+      long skip = (long) (k == 0 ? y : step - 1) * bytes.length;
+      while (skip > 0) {
+        if (peek() == -1) {
+          throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+        }
+        int count = (int) Math.min(limit - position, skip);
+        position += count;
+        skip -= count;
+      }
+
+      int filled = 0;
+      while (filled < bytes.length) {
+        if (peek() == -1) {
+          throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+        }
+        int count = Math.min(limit - position, bytes.length - filled);
+        System.arraycopy(buffer, position, bytes, filled, count);
+        position += count;
+        filled += count;
+      }
+      decodeRow(bytes, region.x * pixelBytes, row, maxValue, channels, step);
+      properties.raster.setRow(k, row, 0);
+    }
+    return properties;
+  }
+
+  /**
+   * Reads the pixels of a binary image by mapping the file into memory, which avoids copying
+   * them through a stream. Only the rows that are kept are read, in the same way as
+   * {@link #readPlain}.
+   *
+   * @param path     the path of the file.
+   * @param offset   the position of the first pixel in the file.
+   * @param width    the width of the image.
+   * @param height   the height of the image.
+   * @param maxValue the maximum value given in the header.
+   * @param channels 3 for a colour (P6) image or 1 for a grey (P5) image.
+   * @param region   the region of the image to keep.
+   * @param step     the distance between the pixels kept.
+   * @return the pixels.
+   * @throws IllegalArgumentException if the file is too short for all the pixels.
+   */
+  static Pixels mapRaw(Path path, long offset, int width, int height, int maxValue,
+                       int channels, Rectangle region, int step)
+          throws IllegalArgumentException {
+    Pixels properties = new Pixels(outputSize(region.width, step),
+            outputSize(region.height, step));
+    int pixelBytes = pixelBytes(maxValue, channels);
+    int rowBytes = width * pixelBytes;
+    // The bytes from the first to the last pixel kept in a row.
+    byte[] bytes = new byte[properties.width == 0 ? 0
+            : (properties.width - 1) * step * pixelBytes + pixelBytes];
+    int[] row = new int[properties.width];
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() < offset + (long) rowBytes * height) {
+        throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+      }
+      // A single mapping cannot be larger than 2 GB, so large images are mapped in parts.
+      int rowsPerMap = Math.max(1, Integer.MAX_VALUE / Math.max(rowBytes, 1));
+      int lastRow = region.y + (properties.height - 1) * step;
+      int k = 0;
+      while (k < properties.height) {
+        int firstRow = region.y + k * step;
+        int rows = Math.min(rowsPerMap, lastRow - firstRow + 1);
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY,
+                offset + (long) rowBytes * firstRow, (long) rowBytes * rows);
+        for (int y = firstRow; k < properties.height && y < firstRow + rows; y += step) {
+          map.position((y - firstRow) * rowBytes + region.x * pixelBytes);
+          map.get(bytes);
+          decodeRow(bytes, 0, row, maxValue, channels, step);
+          properties.raster.setRow(k, row, 0);
+          k++;
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return properties;
+  }
+
+  // The number of pixels kept out of a length when every step-th pixel is kept.
+  private static int outputSize(int length, int step) {
+    return (length + step - 1) / step;
+  }
+
+  private static int pixelBytes(int maxValue, int channels) {
+    return channels * (maxValue > 255 ? 2 : 1);
+  }
+
+  // Turns every step-th pixel of a row of binary samples, from a given byte on, into packed
+  // pixels. Samples are one byte, or two bytes with the most significant first when the
+  // maximum value is above 255.
+  private static void decodeRow(byte[] bytes, int start, int[] row, int maxValue,
+                                int channels, int step) {
+    boolean wide = maxValue > 255;
+    int sampleBytes = wide ? 2 : 1;
+    int i = start;
+    for (int x = 0; x < row.length; x++) {
+      if (channels == 3) {
+        int r = scale(sample(bytes, i, wide), maxValue);
+        int g = scale(sample(bytes, i + sampleBytes, wide), maxValue);
+        int b = scale(sample(bytes, i + 2 * sampleBytes, wide), maxValue);
+        row[x] = Pixels.pack(r, g, b);
+      } else {
+        int grey = scale(sample(bytes, i, wide), maxValue);
+        row[x] = Pixels.pack(grey, grey, grey);
+      }
+      i += channels * sampleBytes * step;
+    }
+  }
+
+  private static int sample(byte[] bytes, int i, boolean wide) {
+    if (wide) {
+      return ((bytes[i] & 0xFF) << 8) | (bytes[i + 1] & 0xFF);
+    }
+    return bytes[i] & 0xFF;
+  }
+
+  // Maps a value from 0 to maxValue onto 0 to 255, rounding to the nearest value.
+  static int scale(int value, int maxValue) {
+    if (maxValue == 255) {
+      return Pixels.clamp(value);
+    }
+    value = Math.min(Math.max(value, 0), maxValue);
+    return (int) (((long) value * 255 + maxValue / 2) / maxValue);
+  }
+}
@@ -0,0 +1,95 @@
+package model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import utility.Pixels;
+
+/**
+ * Writes a PPM or PGM file one row at a time. Plain files are written with a table holding the
+ * ASCII form of every channel value, so that no number is turned into a string.
+ */
+class PPMWriter {
+
+  // The ASCII form of every channel value, followed by a space.
+  private static final byte[][] VALUES = new byte[256][];
+
+  static {
+    for (int i = 0; i < VALUES.length; i++) {
+      VALUES[i] = (i + " ").getBytes();
+    }
+  }
+
+  private PPMWriter() {
+  }
+
+  private static void writeHeader(String magic, Pixels obj, OutputStream out)
+          throws IOException {
+    out.write((magic + "\n" + obj.width + " " + obj.height + "\n" + 255 + "\n").getBytes());
+  }
+
+  /**
+   * Writes a plain (P3) file.
+   *
+   * @param obj the image.
+   * @param out the stream to write to.
+   * @throws IOException if the stream cannot be written.
+   */
+  static void writePlain(Pixels obj, OutputStream out) throws IOException {
+    writeHeader("P3", obj, out);
+
+    int[] row = new int[obj.width];
+    // Every channel takes at most three digits and a space, and every row ends with a newline.
+    byte[] line = new byte[obj.width * 3 * 4 + 1];
+    for (int y = 0; y < obj.height; y++) {
+      obj.raster.getRow(y, row, 0);
+      int length = 0;
+      for (int x = 0; x < obj.width; x++) {
+        int rgb = row[x];
+        length = append(line, length, VALUES[Pixels.red(rgb)]);
+        length = append(line, length, VALUES[Pixels.green(rgb)]);
+        length = append(line, length, VALUES[Pixels.blue(rgb)]);
+      }
+      line[length++] = '\n';
+      out.write(line, 0, length);
+    }
+  }
+
+  private static int append(byte[] line, int length, byte[] value) {
+    for (byte b : value) {
+      line[length++] = b;
+    }
+    return length;
+  }
+
+  /**
+   * Writes a binary file: a P6 file of the colours, or a P5 file of the luma-component
+   * greyscale.
+   *
+   * @param obj  the image.
+   * @param grey whether to write the luma as a P5 file.
+   * @param out  the stream to write to.
+   * @throws IOException if the stream cannot be written.
+   */
+  static void writeRaw(Pixels obj, boolean grey, OutputStream out) throws IOException {
+    writeHeader(grey ? "P5" : "P6", obj, out);
+
+    int[] row = new int[obj.width];
+    byte[] rowBytes = new byte[obj.width * (grey ? 1 : 3)];
+    for (int y = 0; y < obj.height; y++) {
+      obj.raster.getRow(y, row, 0);
+      int i = 0;
+      for (int x = 0; x < obj.width; x++) {
+        int rgb = row[x];
+        if (grey) {
+          rowBytes[i++] = (byte) AbstractImageManipulationsModel.luma(rgb);
+        } else {
+          rowBytes[i++] = (byte) Pixels.red(rgb);
+          rowBytes[i++] = (byte) Pixels.green(rgb);
+          rowBytes[i++] = (byte) Pixels.blue(rgb);
+        }
+      }
+      out.write(rowBytes, 0, rowBytes.length);
+    }
+  }
+}
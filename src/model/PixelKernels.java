@@ -0,0 +1,169 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import utility.Pixels;
+
+/**
+ * The inner loops of the per-pixel operations and of convolution, working on blocks of packed
+ * pixels. There are two backends: a scalar one, and one that uses the SIMD instructions of the
+ * processor through the Java Vector API. Both give exactly the same pixels.
+ *
+ * <p>The Vector API is an incubator module of the JDK, so the vector backend lives in the
+ * separate source folder {@code src-vector} and is only built and used when the module is there:
+ * <pre>
+ *   javac --add-modules jdk.incubator.vector -cp out -d out src-vector/model/*.java
+ *   java --add-modules jdk.incubator.vector -cp out SimpleImageManipulations
+ * </pre>
+ * When the program starts, the vector backend is loaded if it was built and the module is
+ * present, and it is checked against the scalar backend on a sample of pixels. Otherwise, or if
+ * the system property {@code ime.simd} is false, the scalar backend is used.
+ */
+public abstract class PixelKernels {
+
+  // The sepia colour matrix, by output channel and then input channel.
+  static final double[][] SEPIA = {{0.393, 0.769, 0.189}, {0.349, 0.686, 0.168},
+      {0.272, 0.534, 0.131}};
+
+  private static final PixelKernels SCALAR = new ScalarPixelKernels();
+  private static final PixelKernels VECTOR = loadVector();
+  private static volatile PixelKernels current =
+          VECTOR != null && !"false".equals(System.getProperty("ime.simd")) ? VECTOR : SCALAR;
+
+  static PixelKernels get() {
+    return current;
+  }
+
+  /**
+   * Tells whether the vector backend is in use.
+   *
+   * @return true if the operations run on the vector backend.
+   */
+  public static boolean isVectorized() {
+    return current == VECTOR;
+  }
+
+  /**
+   * Switches between the vector and the scalar backend. The vector backend can only be used if
+   * it is available.
+   *
+   * @param vectorized true to use the vector backend.
+   * @return true if the vector backend is now in use.
+   */
+  public static boolean setVectorized(boolean vectorized) {
+    current = vectorized && VECTOR != null ? VECTOR : SCALAR;
+    return isVectorized();
+  }
+
+  // Loads the vector backend, returning null if it is not available or does not give the same
+  // results as the scalar backend on this machine.
+  private static PixelKernels loadVector() {
+    if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      return null;
+    }
+    try {
+      PixelKernels vector = (PixelKernels) Class.forName("model.VectorPixelKernels")
+              .getDeclaredConstructor().newInstance();
+      return vector.matches(SCALAR) ? vector : null;
+    } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+      return null;
+    }
+  }
+
+  // Runs every kernel of both backends on the same pixels and compares the results.
+  private boolean matches(PixelKernels other) {
+    Random random = new Random(42);
+    int[] pixels = new int[4096 + 13];
+    for (int i = 0; i < pixels.length; i++) {
+      // Every grey, then random colours.
+      pixels[i] = i < 256 ? Pixels.pack(i, i, i) : random.nextInt(1 << 24);
+    }
+
+    for (int increment : new int[]{-300, -17, 0, 1, 100, 300}) {
+      int[] expected = pixels.clone();
+      int[] actual = pixels.clone();
+      other.brighten(expected, expected.length, increment);
+      brighten(actual, actual.length, increment);
+      if (!Arrays.equals(expected, actual)) {
+        return false;
+      }
+    }
+
+    int[] expected = pixels.clone();
+    int[] actual = pixels.clone();
+    other.sepia(expected, expected.length);
+    sepia(actual, actual.length);
+    if (!Arrays.equals(expected, actual)) {
+      return false;
+    }
+
+    expected = pixels.clone();
+    actual = pixels.clone();
+    other.lumaGrey(expected, expected.length);
+    lumaGrey(actual, actual.length);
+    if (!Arrays.equals(expected, actual)) {
+      return false;
+    }
+
+    double[][] kernel = new double[3][5];
+    for (double[] row : kernel) {
+      for (int j = 0; j < row.length; j++) {
+        row[j] = random.nextDouble() - 0.25;
+      }
+    }
+    int width = 64;
+    int count = width - 4;
+    double[][] sums = new double[6][count + 3];
+    other.correlate(kernel, pixels, 5, width, count, sums[0], sums[1], sums[2], 3);
+    correlate(kernel, pixels, 5, width, count, sums[3], sums[4], sums[5], 3);
+    return Arrays.equals(sums[0], sums[3]) && Arrays.equals(sums[1], sums[4])
+            && Arrays.equals(sums[2], sums[5]);
+  }
+
+  /**
+   * Adds an increment to every channel of the pixels, clamping the results to 0 to 255.
+   *
+   * @param pixels    the pixels, packed as 0xRRGGBB.
+   * @param length    the number of pixels.
+   * @param increment the increment.
+   */
+  abstract void brighten(int[] pixels, int length, int increment);
+
+  /**
+   * Multiplies every pixel by the sepia colour matrix, truncating every term of the sums and
+   * clamping them to 0 to 255.
+   *
+   * @param pixels the pixels, packed as 0xRRGGBB.
+   * @param length the number of pixels.
+   */
+  abstract void sepia(int[] pixels, int length);
+
+  /**
+   * Replaces every pixel by the grey of its luma, see
+   * {@link AbstractImageManipulationsModel#luma(int)}.
+   *
+   * @param pixels the pixels, packed as 0xRRGGBB.
+   * @param length the number of pixels.
+   */
+  abstract void lumaGrey(int[] pixels, int length);
+
+  /**
+   * Works out the weighted sums of the pixels under a kernel, for count kernel positions along a
+   * row. The weights of every channel are added up in doubles, row by row of the kernel and
+   * column by column within a row, so that the sums are the same however they are computed.
+   *
+   * @param kernel      the weights, by row and then column.
+   * @param input       the pixels, packed as 0xRRGGBB.
+   * @param offset      the position in input of the top left pixel under the kernel at its
+   *                    first position.
+   * @param stride      the distance in input between the rows of the image.
+   * @param count       the number of positions of the kernel.
+   * @param red         receives the sums of the red channel.
+   * @param green       receives the sums of the green channel.
+   * @param blue        receives the sums of the blue channel.
+   * @param destination the position in the sums arrays of the first sum.
+   */
+  abstract void correlate(double[][] kernel, int[] input, int offset, int stride, int count,
+                          double[] red, double[] green, double[] blue, int destination);
+}
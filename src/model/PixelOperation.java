@@ -0,0 +1,16 @@
+package model;
+
+/**
+ * An operation that transforms every pixel on its own, independently of its neighbours,
+ * such as brighten or sepia. It is applied in place to a block of packed pixels.
+ */
+interface PixelOperation {
+
+  /**
+   * Transforms the first length pixels of the array in place.
+   *
+   * @param pixels the pixels, packed as 0xRRGGBB.
+   * @param length the number of pixels to transform.
+   */
+  void apply(int[] pixels, int length);
+}
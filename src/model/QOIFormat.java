@@ -0,0 +1,238 @@
+package model;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import utility.ImageUtil;
+import utility.Pixels;
+
+/**
+ * Reads and writes QOI ("Quite OK Image") files. QOI is lossless like PNG, but every pixel is
+ * coded in a single pass from the pixel before it and a small table of recent colours, with no
+ * entropy coding, so it is many times cheaper to encode and decode. Images are written with 3
+ * channels; the alpha of files with 4 channels is dropped when they are read.
+ */
+class QOIFormat {
+
+  private static final int OP_INDEX = 0x00;
+  private static final int OP_DIFF = 0x40;
+  private static final int OP_LUMA = 0x80;
+  private static final int OP_RUN = 0xC0;
+  private static final int OP_RGB = 0xFE;
+  private static final int OP_RGBA = 0xFF;
+  private static final int MASK = 0xC0;
+  private static final int MAX_RUN = 62;
+  private static final byte[] END = {0, 0, 0, 0, 0, 0, 0, 1};
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final InputStream in;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int position;
+  private int limit;
+
+  private QOIFormat(InputStream in) {
+    this.in = in;
+  }
+
+  // Pixels are kept as 0xAARRGGBB while coding, since alpha takes part in the colour table.
+  private static int hash(int argb) {
+    return ((argb >> 16 & 0xFF) * 3 + (argb >> 8 & 0xFF) * 5 + (argb & 0xFF) * 7
+            + (argb >>> 24) * 11) & 63;
+  }
+
+  /**
+   * Writes a file.
+   *
+   * @param obj the image.
+   * @param out the stream to write to.
+   * @throws IOException if the stream cannot be written.
+   */
+  static void write(Pixels obj, OutputStream out) throws IOException {
+    byte[] header = {'q', 'o', 'i', 'f',
+        (byte) (obj.width >>> 24), (byte) (obj.width >>> 16), (byte) (obj.width >>> 8),
+        (byte) obj.width,
+        (byte) (obj.height >>> 24), (byte) (obj.height >>> 16), (byte) (obj.height >>> 8),
+        (byte) obj.height,
+        3, 0};
+    out.write(header);
+
+    int[] index = new int[64];
+    int previous = 0xFF000000;
+    int run = 0;
+    int[] row = new int[obj.width];
+    // A pixel takes at most 4 bytes, and the first pixel of a row may also end a run left over
+    // from the row before.
+    byte[] bytes = new byte[obj.width * 4 + 1];
+    for (int y = 0; y < obj.height; y++) {
+      obj.raster.getRow(y, row, 0);
+      int length = 0;
+      for (int x = 0; x < obj.width; x++) {
+        int pixel = 0xFF000000 | row[x];
+        if (pixel == previous) {
+          run++;
+          if (run == MAX_RUN) {
+            bytes[length++] = (byte) (OP_RUN | (run - 1));
+            run = 0;
+          }
+          continue;
+        }
+        if (run > 0) {
+          bytes[length++] = (byte) (OP_RUN | (run - 1));
+          run = 0;
+        }
+
+        int hash = hash(pixel);
+        if (index[hash] == pixel) {
+          bytes[length++] = (byte) (OP_INDEX | hash);
+        } else {
+          index[hash] = pixel;
+          // The differences wrap around, as they do when they are added back.
+          int dr = (byte) ((pixel >> 16) - (previous >> 16));
+          int dg = (byte) ((pixel >> 8) - (previous >> 8));
+          int db = (byte) (pixel - previous);
+          int drDg = dr - dg;
+          int dbDg = db - dg;
+          if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1) {
+            bytes[length++] = (byte) (OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+          } else if (dg >= -32 && dg <= 31 && drDg >= -8 && drDg <= 7 && dbDg >= -8
+                  && dbDg <= 7) {
+            bytes[length++] = (byte) (OP_LUMA | (dg + 32));
+            bytes[length++] = (byte) ((drDg + 8) << 4 | (dbDg + 8));
+          } else {
+            bytes[length++] = (byte) OP_RGB;
+            bytes[length++] = (byte) (pixel >> 16);
+            bytes[length++] = (byte) (pixel >> 8);
+            bytes[length++] = (byte) pixel;
+          }
+        }
+        previous = pixel;
+      }
+      out.write(bytes, 0, length);
+    }
+    if (run > 0) {
+      out.write(OP_RUN | (run - 1));
+    }
+    out.write(END);
+  }
+
+  // Gets the next byte of the stream.
+  private int next() throws IOException {
+    if (position == limit) {
+      limit = in.read(buffer, 0, buffer.length);
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        throw new IllegalArgumentException("Invalid QOI file: unexpected end of file");
+      }
+    }
+    return buffer[position++] & 0xFF;
+  }
+
+  private int nextInt() throws IOException {
+    return next() << 24 | next() << 16 | next() << 8 | next();
+  }
+
+  // Reads the width and height of a file, leaving the stream at the first pixel.
+  private int[] readHeader() throws IOException, IllegalArgumentException {
+    if (next() != 'q' || next() != 'o' || next() != 'i' || next() != 'f') {
+      throw new IllegalArgumentException("Invalid QOI file: file should begin with qoif");
+    }
+    int width = nextInt();
+    int height = nextInt();
+    int channels = next();
+    next();
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException("Invalid QOI file: image is too large");
+    }
+    if (channels != 3 && channels != 4) {
+      throw new IllegalArgumentException("Invalid QOI file: channels must be 3 or 4");
+    }
+    return new int[]{width, height};
+  }
+
+  /**
+   * Reads a file. Only the pixels of a region are kept, and of those only every step-th pixel
+   * of every step-th row; decoding stops after the last row that is kept.
+   *
+   * @param in      the stream.
+   * @param options the region and scale given to the load, if any.
+   * @return the pixels.
+   * @throws IllegalArgumentException if the file is not valid.
+   */
+  static Pixels read(InputStream in, Map<String, String> options)
+          throws IllegalArgumentException {
+    QOIFormat reader = new QOIFormat(in);
+    try {
+      int[] size = reader.readHeader();
+      Rectangle region = ImageUtil.getRegion(options, size[0], size[1]);
+      return reader.readPixels(size[0], region, ImageUtil.getScale(options));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Pixels readPixels(int width, Rectangle region, int step) throws IOException {
+    Pixels properties = new Pixels((region.width + step - 1) / step,
+            (region.height + step - 1) / step);
+    int[] index = new int[64];
+    int pixel = 0xFF000000;
+    int run = 0;
+    int[] decoded = new int[width];
+    int[] row = new int[properties.width];
+    int lastRow = region.y + (properties.height - 1) * step;
+    for (int y = 0; y <= lastRow; y++) {
+      for (int x = 0; x < width; x++) {
+        if (run > 0) {
+          run--;
+        } else {
+          int b1 = next();
+          if (b1 == OP_RGB) {
+            pixel = (pixel & 0xFF000000) | next() << 16 | next() << 8 | next();
+          } else if (b1 == OP_RGBA) {
+            int rgb = next() << 16 | next() << 8 | next();
+            pixel = next() << 24 | rgb;
+          } else {
+            switch (b1 & MASK) {
+              case OP_INDEX:
+                pixel = index[b1];
+                break;
+              case OP_DIFF:
+                pixel = add(pixel, ((b1 >> 4) & 3) - 2, ((b1 >> 2) & 3) - 2, (b1 & 3) - 2);
+                break;
+              case OP_LUMA:
+                int b2 = next();
+                int dg = (b1 & 0x3F) - 32;
+                pixel = add(pixel, dg - 8 + ((b2 >> 4) & 0x0F), dg, dg - 8 + (b2 & 0x0F));
+                break;
+              default:
+                run = b1 & 0x3F;
+                break;
+            }
+          }
+          index[hash(pixel)] = pixel;
+        }
+        decoded[x] = pixel & 0xFFFFFF;
+      }
+      if (y >= region.y && (y - region.y) % step == 0) {
+        for (int x = 0; x < row.length; x++) {
+          row[x] = decoded[region.x + x * step];
+        }
+        properties.raster.setRow((y - region.y) / step, row, 0);
+      }
+    }
+    return properties;
+  }
+
+  // Adds wrapping differences to the channels of a pixel, keeping its alpha.
+  private static int add(int pixel, int dr, int dg, int db) {
+    int r = ((pixel >> 16) + dr) & 0xFF;
+    int g = ((pixel >> 8) + dg) & 0xFF;
+    int b = (pixel + db) & 0xFF;
+    return (pixel & 0xFF000000) | r << 16 | g << 8 | b;
+  }
+}
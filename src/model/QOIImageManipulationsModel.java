@@ -0,0 +1,75 @@
+package model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import utility.EncodedImageStream;
+import utility.ImageUtil;
+import utility.Pixels;
+
+/**
+ * This class extends the AbstractImageManipulationsModel class.
+ * It loads and saves images as QOI files, a lossless format that is much faster to encode and
+ * decode than PNG.
+ */
+public class QOIImageManipulationsModel extends AbstractImageManipulationsModel {
+
+  private static QOIImageManipulationsModel instance = null;
+
+  /**
+   * Creates a model working on the images of a session.
+   *
+   * @param session the session holding the images.
+   */
+  protected QOIImageManipulationsModel(ImageSession session) {
+    super(session);
+  }
+
+  /**
+   * Singleton design pattern.
+   *
+   * @return the class object.
+   */
+  public static synchronized QOIImageManipulationsModel getInstance() {
+    if (instance == null) {
+      instance = new QOIImageManipulationsModel(ImageSession.getDefault());
+    }
+
+    return instance;
+  }
+
+  @Override
+  public boolean loadImage(String imagePath, String imageName, OutputStream out)
+          throws IllegalArgumentException {
+    InputStream in = ImageUtil.getInputData(imagePath);
+    if (in == null) {
+      throw new IllegalArgumentException("Invalid Input Stream!");
+    }
+
+    Pixels properties;
+    try {
+      properties = QOIFormat.read(in, ImageUtil.getOptions(imagePath));
+    } finally {
+      try {
+        in.close();
+      } catch (IOException e) {
+        // Nothing more to read from it either way.
+      }
+    }
+
+    imageNamePropertiesMap.put(imageName, properties);
+    return true;
+  }
+
+  @Override
+  public boolean saveImage(String imagePath, String imageName, OutputStream out)
+          throws IllegalArgumentException {
+    checkIfImagePresentInMap(imageName);
+
+    // The file is encoded when it is written, straight into the file.
+    Pixels obj = imageNamePropertiesMap.get(imageName);
+    ImageUtil.setInputData(imagePath, new EncodedImageStream(o -> QOIFormat.write(obj, o)));
+    return true;
+  }
+}
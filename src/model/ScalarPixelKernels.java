@@ -0,0 +1,82 @@
+package model;
+
+import utility.Pixels;
+
+/**
+ * The kernels of {@link PixelKernels} as plain loops, one pixel at a time.
+ */
+final class ScalarPixelKernels extends PixelKernels {
+
+  // The terms of the sepia sums, truncated one by one, by output channel, input channel and
+  // input value.
+  private static final int[][][] SEPIA_TERMS = new int[3][3][];
+
+  static {
+    for (int i = 0; i <= 2; i++) {
+      for (int j = 0; j <= 2; j++) {
+        SEPIA_TERMS[i][j] = FixedPoint.truncatedTerms(SEPIA[i][j]);
+      }
+    }
+  }
+
+  @Override
+  void brighten(int[] pixels, int length, int increment) {
+    for (int i = 0; i < length; i++) {
+      int r = Pixels.clamp(Pixels.red(pixels[i]) + increment);
+      int g = Pixels.clamp(Pixels.green(pixels[i]) + increment);
+      int b = Pixels.clamp(Pixels.blue(pixels[i]) + increment);
+
+      pixels[i] = Pixels.pack(r, g, b);
+    }
+  }
+
+  @Override
+  void sepia(int[] pixels, int length) {
+    // Every term of the sums is truncated on its own, and adding a truncated term to a whole
+    // number gives the same as adding the term and truncating the sum, so the terms are looked
+    // up from the tables.
+    int[][] redTerms = SEPIA_TERMS[0];
+    int[][] greenTerms = SEPIA_TERMS[1];
+    int[][] blueTerms = SEPIA_TERMS[2];
+    for (int p = 0; p < length; p++) {
+      int r = Pixels.red(pixels[p]);
+      int g = Pixels.green(pixels[p]);
+      int b = Pixels.blue(pixels[p]);
+      pixels[p] = Pixels.pack(
+              Pixels.clamp(redTerms[0][r] + redTerms[1][g] + redTerms[2][b]),
+              Pixels.clamp(greenTerms[0][r] + greenTerms[1][g] + greenTerms[2][b]),
+              Pixels.clamp(blueTerms[0][r] + blueTerms[1][g] + blueTerms[2][b]));
+    }
+  }
+
+  @Override
+  void lumaGrey(int[] pixels, int length) {
+    for (int i = 0; i < length; i++) {
+      int grey = AbstractImageManipulationsModel.luma(pixels[i]);
+      pixels[i] = Pixels.pack(grey, grey, grey);
+    }
+  }
+
+  @Override
+  void correlate(double[][] kernel, int[] input, int offset, int stride, int count,
+                 double[] red, double[] green, double[] blue, int destination) {
+    for (int x = 0; x < count; x++) {
+      double r = 0.0;
+      double g = 0.0;
+      double b = 0.0;
+      for (int i = 0; i < kernel.length; i++) {
+        int base = offset + i * stride + x;
+        for (int j = 0; j < kernel[i].length; j++) {
+          double weight = kernel[i][j];
+          int rgb = input[base + j];
+          r += weight * Pixels.red(rgb);
+          g += weight * Pixels.green(rgb);
+          b += weight * Pixels.blue(rgb);
+        }
+      }
+      red[destination + x] = r;
+      green[destination + x] = g;
+      blue[destination + x] = b;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The content of a file that has not been encoded yet. {@link ImageUtil#writeFile} passes the
+ * encoder the file itself, while reading the stream encodes the image in memory the first time
+ * it is read, so that a saved image can still be loaded before its file is written.
+ */
+public class EncodedImageStream extends InputStream {
+
+  private final ImageEncoder encoder;
+  private InputStream encoded;
+
+  /**
+   * Creates the stream.
+   *
+   * @param encoder the encoder writing the content.
+   */
+  public EncodedImageStream(ImageEncoder encoder) {
+    this.encoder = encoder;
+  }
+
+  public ImageEncoder getEncoder() {
+    return encoder;
+  }
+
+  private InputStream encoded() throws IOException {
+    if (encoded == null) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      encoder.encode(bytes);
+      encoded = new ByteArrayInputStream(bytes.toByteArray());
+    }
+    return encoded;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return encoded().read();
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    return encoded().read(b, off, len);
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    return encoded().skip(n);
+  }
+
+  @Override
+  public int available() throws IOException {
+    return encoded().available();
+  }
+}
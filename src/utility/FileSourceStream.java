@@ -0,0 +1,64 @@
+package utility;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * An input stream over a file that is only opened when it is first read, and that remembers the
+ * path it reads from. It is what {@link ImageUtil#readFile} hands to the models, so that they can
+ * read the file straight from disk instead of from a copy held in memory.
+ */
+public class FileSourceStream extends InputStream {
+
+  private final Path path;
+  private InputStream in;
+
+  /**
+   * Creates a stream over a file. The file is not opened yet.
+   *
+   * @param path the path of the file.
+   */
+  public FileSourceStream(Path path) {
+    this.path = path;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  private InputStream stream() throws IOException {
+    if (in == null) {
+      in = new FileInputStream(path.toFile());
+    }
+    return in;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return stream().read();
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    return stream().read(b, off, len);
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    return stream().skip(n);
+  }
+
+  @Override
+  public int available() throws IOException {
+    return stream().available();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (in != null) {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an image in the format of a file. Saving an image stages an encoder instead of the
+ * bytes of the file, so that the file can be written straight to disk without ever holding the
+ * whole of it in memory.
+ */
+public interface ImageEncoder {
+
+  /**
+   * Writes the encoded image.
+   *
+   * @param out the stream to write to. It is not closed.
+   * @throws IOException if the stream cannot be written.
+   */
+  void encode(OutputStream out) throws IOException;
+}
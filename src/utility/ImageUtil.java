@@ -1,28 +1,74 @@
 package utility;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Scanner;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import utility.raster.Raster;
+import utility.raster.Rasters;
 
 /**
  * A class created to handle I/O operations of read and write of a file.
  */
 public class ImageUtil {
 
-  static HashMap<String, InputStream> inputMap = new HashMap<>();
+  // Holds the file content between reading a file and loading it into a model, or between saving
+  // an image and writing its file. Both steps happen on the thread running the command, so every
+  // thread has its own map and scripts running at the same time never consume each other's
+  // content, even when they read the same file.
+  static final ThreadLocal<Map<String, InputStream>> inputMap =
+          ThreadLocal.withInitial(HashMap::new);
+
+  // Holds the options given to a load or save command, such as --binary, by the path of the
+  // image, in the same way as the file content.
+  static final ThreadLocal<Map<String, Map<String, String>>> optionsMap =
+          ThreadLocal.withInitial(HashMap::new);
+
+  // ImageIO readers and writers are costly to look up and cannot be shared between threads, so
+  // every thread keeps one of each by format and reuses it for every image.
+  private static final ThreadLocal<Map<String, ImageWriter>> writers =
+          ThreadLocal.withInitial(HashMap::new);
+  private static final ThreadLocal<Map<String, ImageReader>> readers =
+          ThreadLocal.withInitial(HashMap::new);
+
+  static {
+    // Streams that cannot seek are buffered in memory rather than in temporary files.
+    ImageIO.setUseCache(false);
+  }
 
   /**
    * A method to convert the buffered image to byte array in order for it to be processed by
@@ -35,10 +81,159 @@ public class ImageUtil {
    */
   public static byte[] toByteArray(BufferedImage image, String format) throws IOException {
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    ImageIO.write(image, format, outputStream);
+    writeImage(image, format, -1, outputStream);
     return outputStream.toByteArray();
   }
 
+  /**
+   * A method to encode an image with the writer of its format kept by the current thread.
+   *
+   * @param image   the image.
+   * @param format  format of the image.
+   * @param quality the compression quality from 0 to 1, or -1 for the default of the format.
+   * @param out     the stream to write to. It is not closed.
+   * @throws IOException if there is no writer for the format or the stream cannot be written.
+   */
+  public static void writeImage(BufferedImage image, String format, float quality,
+                                OutputStream out) throws IOException {
+    Map<String, ImageWriter> threadWriters = writers.get();
+    String key = format.toLowerCase();
+    ImageWriter writer = threadWriters.get(key);
+    if (writer == null) {
+      Iterator<ImageWriter> found = ImageIO.getImageWritersByFormatName(key);
+      if (!found.hasNext()) {
+        throw new IOException("No writer for " + format + " images");
+      }
+      writer = found.next();
+      threadWriters.put(key, writer);
+    }
+
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    if (quality >= 0) {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      if (param.getCompressionType() == null) {
+        param.setCompressionType(param.getCompressionTypes()[0]);
+      }
+      param.setCompressionQuality(quality);
+    }
+    ImageOutputStream stream = new MemoryCacheImageOutputStream(out);
+    try {
+      writer.setOutput(stream);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.reset();
+      // Flushes the stream without closing the one under it.
+      stream.close();
+    }
+  }
+
+  /**
+   * A method to get the compression quality asked for by the options of a save: the quality
+   * option from 0 to 100 for JPEG images, or the compression option from 0 (fastest) to 9
+   * (smallest) for PNG images.
+   *
+   * @param format  format of the image.
+   * @param options the options given to the save.
+   * @return the quality from 0 to 1 to pass to {@link #writeImage}, or -1 if none was given.
+   * @throws IllegalArgumentException if an option is out of range or not for this format.
+   */
+  public static float getCompressionQuality(String format, Map<String, String> options)
+          throws IllegalArgumentException {
+    String quality = options.get("quality");
+    String compression = options.get("compression");
+    boolean jpeg = format.equalsIgnoreCase("jpg") || format.equalsIgnoreCase("jpeg");
+    if (quality != null) {
+      if (!jpeg) {
+        throw new IllegalArgumentException("The quality option is only for JPEG images");
+      }
+      return parseLevel("quality", quality, 100) / 100f;
+    }
+    if (compression != null) {
+      if (!format.equalsIgnoreCase("png")) {
+        throw new IllegalArgumentException("The compression option is only for PNG images");
+      }
+      // The PNG writer turns a quality q into the deflate level 9 - round(9 * q).
+      return (9 - parseLevel("compression", compression, 9)) / 9f;
+    }
+    return -1;
+  }
+
+  private static int parseLevel(String name, String value, int max)
+          throws IllegalArgumentException {
+    try {
+      int level = Integer.parseInt(value);
+      if (level >= 0 && level <= max) {
+        return level;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    throw new IllegalArgumentException("Invalid " + name + " " + value + ", expected 0 to "
+            + max);
+  }
+
+  /**
+   * A method to decode an image with the reader kept by the current thread for its format.
+   * Only the region and scale asked for by the options are decoded, letting the reader skip
+   * the rest of the image.
+   *
+   * @param in      the image, which is closed once read.
+   * @param format  the format given by the extension of the file.
+   * @param options the options given to the load.
+   * @return the image, or null if no reader can decode it.
+   * @throws IOException if the image cannot be read.
+   */
+  public static BufferedImage readImage(ImageInputStream in, String format,
+                                        Map<String, String> options) throws IOException {
+    if (in == null) {
+      return null;
+    }
+    try {
+      ImageReader reader = getReader(in, format.toLowerCase());
+      if (reader == null) {
+        return null;
+      }
+      try {
+        reader.setInput(in, true, true);
+        ImageReadParam param = reader.getDefaultReadParam();
+        if (!options.isEmpty()) {
+          int step = getScale(options);
+          param.setSourceRegion(getRegion(options, reader.getWidth(0), reader.getHeight(0)));
+          param.setSourceSubsampling(step, step, 0, 0);
+        }
+        return reader.read(0, param);
+      } finally {
+        // Readers found from the content are not kept.
+        if (reader == readers.get().get(format.toLowerCase())) {
+          reader.reset();
+        } else {
+          reader.dispose();
+        }
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  // Gets the reader kept for a format, or looks one up from the content if that reader cannot
+  // decode it, such as for a file with the wrong extension.
+  private static ImageReader getReader(ImageInputStream in, String format) throws IOException {
+    Map<String, ImageReader> threadReaders = readers.get();
+    ImageReader reader = threadReaders.get(format);
+    if (reader == null) {
+      Iterator<ImageReader> found = ImageIO.getImageReadersBySuffix(format);
+      if (found.hasNext()) {
+        reader = found.next();
+        threadReaders.put(format, reader);
+      }
+    }
+    if (reader != null && reader.getOriginatingProvider().canDecodeInput(in)) {
+      return reader;
+    }
+    Iterator<ImageReader> found = ImageIO.getImageReaders(in);
+    return found.hasNext() ? found.next() : null;
+  }
+
   // Gets the full image path from the relative path.
 
   /**
@@ -80,46 +275,69 @@ public class ImageUtil {
    * @return if the file has been successfully read or not.
    */
   public static boolean readFile(OutputStream out, String imagePath, String fileExtension) {
-    InputStream inputStream = null;
-    String path = "";
-    if (fileExtension.equals("ppm")) {
-      Scanner sc = null;
-      try {
-        path = getFullImagePath(imagePath);
-        sc = new Scanner(new FileInputStream(path));
-      } catch (FileNotFoundException e) {
-        PrintStream outStream = new PrintStream(out);
-        outStream.print("File " + path + " not found!");
-        return false;
-      }
-      StringBuilder builder = new StringBuilder();
-      //read the file line by line, and populate a string. This will throw away any comment lines
-      while (sc.hasNextLine()) {
-        String s = sc.nextLine();
-        if (s.charAt(0) != '#') {
-          builder.append(s).append(System.lineSeparator());
-        }
-      }
+    // The file is not read here: the model decodes it straight from disk when it is loaded,
+    // so every image is decoded only once.
+    String path = getFullImagePath(imagePath);
+    File file = new File(path);
+    if (!file.isFile() || !file.canRead()) {
+      PrintStream outStream = new PrintStream(out);
+      outStream.print("File " + path + " not found!");
+      return false;
+    }
 
-      inputStream = new ByteArrayInputStream(builder.toString().getBytes());
-    } else {
-      try {
-        path = getFullImagePath(imagePath);
-        File file = new File(path);
-        BufferedImage image = ImageIO.read(file);
-        byte[] bytes = toByteArray(image, fileExtension);
+    inputMap.get().put(imagePath, new FileSourceStream(file.toPath()));
+    return true;
+  }
 
-        // Convert byte array to InputStream
-        inputStream = new ByteArrayInputStream(bytes);
-      } catch (IOException e) {
-        PrintStream outStream = new PrintStream(out);
-        outStream.print("File " + path + " not found!");
-        return false;
+  /**
+   * A method to read a convolution kernel from a text file. Every line holds one row of the
+   * kernel as numbers separated by whitespace, which may be written as fractions such as 1/16.
+   * Blank lines and lines starting with # are ignored.
+   *
+   * @param out        containing the outputstream object.
+   * @param kernelPath path of the kernel file.
+   * @return the weights of the kernel by row, or null if the file was not found.
+   * @throws IllegalArgumentException if a weight is not a number.
+   */
+  public static double[][] readKernel(OutputStream out, String kernelPath)
+          throws IllegalArgumentException {
+    String path = getFullImagePath(kernelPath);
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(Paths.get(path));
+    } catch (IOException e) {
+      PrintStream outStream = new PrintStream(out);
+      outStream.print("File " + path + " not found!");
+      return null;
+    }
+
+    List<double[]> rows = new ArrayList<>();
+    for (String line : lines) {
+      String trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+      String[] words = trimmed.split("\\s+");
+      double[] row = new double[words.length];
+      for (int i = 0; i < words.length; i++) {
+        row[i] = parseWeight(words[i]);
       }
+      rows.add(row);
     }
+    return rows.toArray(new double[0][]);
+  }
 
-    inputMap.put(imagePath, inputStream);
-    return true;
+  private static double parseWeight(String word) throws IllegalArgumentException {
+    try {
+      int slash = word.indexOf('/');
+      if (slash < 0) {
+        return Double.parseDouble(word);
+      }
+      return Double.parseDouble(word.substring(0, slash))
+              / Double.parseDouble(word.substring(slash + 1));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid kernel weight " + word);
+    }
   }
 
   /**
@@ -132,39 +350,72 @@ public class ImageUtil {
    */
   public static boolean writeFile(String fileExtension, String imagePath, OutputStream out) {
     String path = "";
-    if (fileExtension.equals("ppm")) {
+    if (fileExtension.equals("ppm") || fileExtension.equals("pgm")
+            || fileExtension.equals("ime") || fileExtension.equals("qoi")) {
       path = getFullImagePath(imagePath);
-      File file = new File(path);
-      FileWriter writer;
+      InputStream is = getInputData(imagePath);
+      if (is == null) {
+        PrintStream outStream = new PrintStream(out);
+        outStream.print("File " + path + " not found!");
+        return false;
+      }
+
+      // An .ime file may be mapped by images loaded from it, which must not see it change, so
+      // it is written next to the old file and then replaces it.
+      Path target = Paths.get(path);
+      Path written = fileExtension.equals("ime")
+              ? target.resolveSibling(target.getFileName() + ".tmp") : target;
+      // A saved image is encoded straight into the file, a row at a time. Any other content
+      // is copied byte for byte.
       try {
-        writer = new FileWriter(file);
-        InputStream is = getInputData(imagePath);
-        ByteArrayInputStream bais = (ByteArrayInputStream) is;
-        byte[] buffer = new byte[1024];
-        int bytesRead;
-        StringBuilder stringBuilder = new StringBuilder();
-
-        while ((bytesRead = bais.read(buffer)) != -1) {
-          stringBuilder.append(new String(buffer, 0, bytesRead));
-        }
+        try (OutputStream writer = new BufferedOutputStream(Channels.newOutputStream(
+                FileChannel.open(written, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)),
+                1 << 16)) {
+          if (is instanceof EncodedImageStream) {
+            ((EncodedImageStream) is).getEncoder().encode(writer);
+          } else {
+            byte[] buffer = new byte[1 << 16];
+            int bytesRead;
 
-        writer.write(stringBuilder.toString());
-        writer.close();
+            while ((bytesRead = is.read(buffer)) != -1) {
+              writer.write(buffer, 0, bytesRead);
+            }
+          }
+        }
+        if (written != target) {
+          Files.move(written, target, StandardCopyOption.REPLACE_EXISTING,
+                  StandardCopyOption.ATOMIC_MOVE);
+        }
       } catch (IOException e) {
         PrintStream outStream = new PrintStream(out);
         outStream.print("File " + path + " not found!");
         return false;
       }
     } else {
-      File output = new File(getFullImagePath(imagePath));
-      try {
-        // Create a ByteArrayInputStream from the byte array
-        InputStream is = getInputData(imagePath);
-        ByteArrayInputStream bais = (ByteArrayInputStream) is;
+      path = getFullImagePath(imagePath);
+      InputStream is = getInputData(imagePath);
+      if (is == null) {
+        PrintStream outStream = new PrintStream(out);
+        outStream.print("File " + path + " not found!");
+        return false;
+      }
 
-        // Use ImageIO to read the image from the input stream into a BufferedImage
-        BufferedImage image = ImageIO.read(bais);
-        ImageIO.write(image, fileExtension, output);
+      // A saved image is encoded straight into the file. Any other content is decoded and
+      // written again in the format of the file.
+      try {
+        if (is instanceof EncodedImageStream) {
+          try (OutputStream writer = new BufferedOutputStream(new FileOutputStream(path),
+                  1 << 16)) {
+            ((EncodedImageStream) is).getEncoder().encode(writer);
+          }
+        } else {
+          BufferedImage image = ImageIO.read(is);
+          try (OutputStream writer = new BufferedOutputStream(new FileOutputStream(path),
+                  1 << 16)) {
+            writeImage(image, fileExtension, -1, writer);
+          }
+        }
       } catch (Exception e) {
         PrintStream outStream = new PrintStream(out);
         outStream.print("File " + path + " not found!");
@@ -182,7 +433,18 @@ public class ImageUtil {
    * @param os        object of inputstream.
    */
   public static void setInputData(String imagePath, InputStream os) {
-    inputMap.put(imagePath, os);
+    inputMap.get().put(imagePath, os);
+  }
+
+  /**
+   * A method to forget the file content and options held for a path, once they are no longer
+   * needed.
+   *
+   * @param imagePath path of the image.
+   */
+  public static void clearInputData(String imagePath) {
+    inputMap.get().remove(imagePath);
+    optionsMap.get().remove(imagePath);
   }
 
   /**
@@ -192,7 +454,215 @@ public class ImageUtil {
    * @return the inputstream object from the map.
    */
   public static InputStream getInputData(String imagePath) {
-    return inputMap.get(imagePath);
+    return inputMap.get().get(imagePath);
+  }
+
+  /**
+   * A method to store the options given for reading or writing a file, for them to be
+   * accessible by the load and save methods. Options given before for the same path are
+   * replaced.
+   *
+   * @param imagePath path of the image.
+   * @param options   the options by name, without the leading dashes.
+   */
+  public static void setOptions(String imagePath, Map<String, String> options) {
+    if (options.isEmpty()) {
+      optionsMap.get().remove(imagePath);
+    } else {
+      optionsMap.get().put(imagePath, new HashMap<>(options));
+    }
+  }
+
+  /**
+   * A method to get the options given for reading or writing a file.
+   *
+   * @param imagePath path of the image.
+   * @return the options by name, which is empty if none were given.
+   */
+  public static Map<String, String> getOptions(String imagePath) {
+    return Collections.unmodifiableMap(
+            optionsMap.get().getOrDefault(imagePath, Collections.emptyMap()));
+  }
+
+  /**
+   * A method to get the region of an image to load, given by the region option as
+   * x,y,width,height.
+   *
+   * @param options the options given to the load.
+   * @param width   the width of the image in the file.
+   * @param height  the height of the image in the file.
+   * @return the region, which is the whole image if no region was given.
+   * @throws IllegalArgumentException if the region is not within the image.
+   */
+  public static Rectangle getRegion(Map<String, String> options, int width, int height)
+          throws IllegalArgumentException {
+    String region = options.get("region");
+    if (region == null) {
+      return new Rectangle(0, 0, width, height);
+    }
+    String[] values = region.split(",");
+    if (values.length != 4) {
+      throw new IllegalArgumentException("Invalid region " + region + ", expected x,y,w,h");
+    }
+    Rectangle rectangle;
+    try {
+      rectangle = new Rectangle(Integer.parseInt(values[0].trim()),
+              Integer.parseInt(values[1].trim()), Integer.parseInt(values[2].trim()),
+              Integer.parseInt(values[3].trim()));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid region " + region + ", expected x,y,w,h");
+    }
+    if (rectangle.x < 0 || rectangle.y < 0 || rectangle.width <= 0 || rectangle.height <= 0
+            || (long) rectangle.x + rectangle.width > width
+            || (long) rectangle.y + rectangle.height > height) {
+      throw new IllegalArgumentException("Region " + region + " is not within the "
+              + width + "x" + height + " image");
+    }
+    return rectangle;
+  }
+
+  /**
+   * A method to get the subsampling of an image to load, given by the scale option as 1/n.
+   * Every n-th pixel of every n-th row is kept.
+   *
+   * @param options the options given to the load.
+   * @return n, which is 1 if no scale was given.
+   * @throws IllegalArgumentException if the scale is not of the form 1/n.
+   */
+  public static int getScale(Map<String, String> options) throws IllegalArgumentException {
+    String scale = options.get("scale");
+    if (scale == null) {
+      return 1;
+    }
+    try {
+      if (scale.startsWith("1/")) {
+        int step = Integer.parseInt(scale.substring(2));
+        if (step >= 1) {
+          return step;
+        }
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    throw new IllegalArgumentException("Invalid scale " + scale + ", expected 1/n");
+  }
+
+  /**
+   * A method to copy a raster into a new RGB buffered image, one scanline at a time.
+   * The packed pixels are copied straight into the data of the image, which has the same layout.
+   *
+   * @param raster the pixels of the image.
+   * @return the buffered image.
+   */
+  public static BufferedImage toBufferedImage(Raster raster) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    WritableRaster target = image.getRaster();
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      raster.getRow(y, row, 0);
+      target.setDataElements(0, y, width, 1, row);
+    }
+    return image;
+  }
+
+  /**
+   * A method to copy a buffered image into a new raster of the default backend,
+   * one scanline at a time. The common layouts of decoded images are copied straight from the
+   * data of the image; any other image is converted through its colour model.
+   *
+   * @param image the buffered image.
+   * @return the raster holding the pixels of the image.
+   */
+  public static Raster toRaster(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    Raster raster = Rasters.create(width, height);
+    int[] row = new int[width];
+    WritableRaster source = image.getRaster();
+    boolean untranslated = source.getSampleModelTranslateX() == 0
+            && source.getSampleModelTranslateY() == 0;
+
+    switch (untranslated ? image.getType() : BufferedImage.TYPE_CUSTOM) {
+      case BufferedImage.TYPE_INT_RGB:
+      case BufferedImage.TYPE_INT_ARGB:
+        for (int y = 0; y < height; y++) {
+          source.getDataElements(0, y, width, 1, row);
+          for (int x = 0; x < width; x++) {
+            row[x] &= 0xFFFFFF;
+          }
+          raster.setRow(y, row, 0);
+        }
+        return raster;
+
+      case BufferedImage.TYPE_3BYTE_BGR:
+      case BufferedImage.TYPE_4BYTE_ABGR:
+        copyInterleavedBytes(source, raster, row);
+        return raster;
+
+      case BufferedImage.TYPE_BYTE_GRAY:
+        copyGreyBytes(image, source, raster, row);
+        return raster;
+
+      default:
+        for (int y = 0; y < height; y++) {
+          image.getRGB(0, y, width, 1, row, 0, width);
+          for (int x = 0; x < width; x++) {
+            row[x] &= 0xFFFFFF;
+          }
+          raster.setRow(y, row, 0);
+        }
+        return raster;
+    }
+  }
+
+  // Copies an image holding one byte per channel, such as the BGR images decoded from JPEG,
+  // PNG and BMP files, straight from its bytes. The alpha channel of ABGR images is dropped,
+  // as getRGB would.
+  private static void copyInterleavedBytes(WritableRaster source, Raster raster, int[] row) {
+    PixelInterleavedSampleModel model = (PixelInterleavedSampleModel) source.getSampleModel();
+    byte[] data = ((DataBufferByte) source.getDataBuffer()).getData();
+    int[] offsets = model.getBandOffsets();
+    int pixelStride = model.getPixelStride();
+    int scanlineStride = model.getScanlineStride();
+    int start = source.getDataBuffer().getOffset();
+    for (int y = 0; y < raster.getHeight(); y++) {
+      int i = start + y * scanlineStride;
+      for (int x = 0; x < row.length; x++) {
+        row[x] = Pixels.pack(data[i + offsets[0]] & 0xFF, data[i + offsets[1]] & 0xFF,
+                data[i + offsets[2]] & 0xFF);
+        i += pixelStride;
+      }
+      raster.setRow(y, row, 0);
+    }
+  }
+
+  // Copies a greyscale image straight from its bytes. The grey values are converted to sRGB
+  // the same way getRGB does, through a table built once from the colour model of the image.
+  private static void copyGreyBytes(BufferedImage image, WritableRaster source, Raster raster,
+                                    int[] row) {
+    ColorModel colorModel = image.getColorModel();
+    int[] table = new int[256];
+    byte[] grey = new byte[1];
+    for (int i = 0; i < table.length; i++) {
+      grey[0] = (byte) i;
+      table[i] = colorModel.getRGB(grey) & 0xFFFFFF;
+    }
+
+    ComponentSampleModel model = (ComponentSampleModel) source.getSampleModel();
+    byte[] data = ((DataBufferByte) source.getDataBuffer()).getData();
+    int pixelStride = model.getPixelStride();
+    int scanlineStride = model.getScanlineStride();
+    int start = source.getDataBuffer().getOffset() + model.getBandOffsets()[0];
+    for (int y = 0; y < raster.getHeight(); y++) {
+      int i = start + y * scanlineStride;
+      for (int x = 0; x < row.length; x++) {
+        row[x] = table[data[i] & 0xFF];
+        i += pixelStride;
+      }
+      raster.setRow(y, row, 0);
+    }
   }
 
   public static String getFileName(String name) {
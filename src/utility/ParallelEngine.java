@@ -0,0 +1,136 @@
+package utility;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the work of an image operation on several threads. An image is split into bands of
+ * rows, and the bands are spread over a fork-join pool, so every core works on its own part of
+ * the image. Operations only split work whose result does not depend on the order it is done
+ * in, so the images they produce are the same as when run on a single thread.
+ *
+ * <p>The number of threads is the number of processors unless the system property
+ * {@code ime.parallelism} sets another, and it can be changed at runtime with
+ * {@link #setParallelism(int)}. With a parallelism of 1 all the work is done on the calling
+ * thread.
+ */
+public final class ParallelEngine {
+
+  /**
+   * A piece of work on a band of rows.
+   */
+  public interface BandTask {
+
+    /**
+     * Does the work for the rows from top to bottom, excluding bottom.
+     *
+     * @param top    the first row of the band.
+     * @param bottom the row after the last row of the band.
+     */
+    void run(int top, int bottom);
+  }
+
+  private static ForkJoinPool pool;
+
+  private ParallelEngine() {
+  }
+
+  /**
+   * Gets the pool running the work, creating it the first time it is asked for.
+   *
+   * @return the pool.
+   * @throws IllegalArgumentException if the {@code ime.parallelism} property is not valid.
+   */
+  public static synchronized ForkJoinPool getPool() throws IllegalArgumentException {
+    if (pool == null) {
+      String parallelism = System.getProperty("ime.parallelism");
+      if (parallelism == null || parallelism.isEmpty()) {
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      } else {
+        try {
+          setParallelism(Integer.parseInt(parallelism.trim()));
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Gets the number of threads the work is spread over.
+   *
+   * @return the parallelism of the pool.
+   * @throws IllegalArgumentException if the {@code ime.parallelism} property is not valid.
+   */
+  public static int getParallelism() throws IllegalArgumentException {
+    return getPool().getParallelism();
+  }
+
+  /**
+   * Changes the number of threads used from now on. The old pool is not shut down, since other
+   * threads may have got it and not yet given it their work: that work still runs on it, and its
+   * threads end on their own once they are idle.
+   *
+   * @param parallelism the number of threads, at least 1.
+   * @throws IllegalArgumentException if the parallelism is below 1.
+   */
+  public static synchronized void setParallelism(int parallelism)
+          throws IllegalArgumentException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+    }
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Runs a task over all the rows of an image, split into bands of a given height. The bands
+   * are run on the threads of the pool, and the call returns once all of them are done.
+   *
+   * @param height     the number of rows of the image.
+   * @param bandHeight the number of rows of every band but the last.
+   * @param task       the work on a band.
+   */
+  public static void forEachBand(int height, int bandHeight, BandTask task) {
+    int bands = (height + bandHeight - 1) / bandHeight;
+    ForkJoinPool workers = getPool();
+    if (bands <= 1 || workers.getParallelism() == 1) {
+      if (height > 0) {
+        task.run(0, height);
+      }
+      return;
+    }
+    workers.invoke(new Bands(0, bands, height, bandHeight, task));
+  }
+
+  // Splits a range of bands in halves until a single band is left.
+  private static class Bands extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int first;
+    private final int last;
+    private final int height;
+    private final int bandHeight;
+    private final BandTask task;
+
+    Bands(int first, int last, int height, int bandHeight, BandTask task) {
+      this.first = first;
+      this.last = last;
+      this.height = height;
+      this.bandHeight = bandHeight;
+      this.task = task;
+    }
+
+    @Override
+    protected void compute() {
+      if (last - first == 1) {
+        int top = first * bandHeight;
+        task.run(top, Math.min(height, top + bandHeight));
+        return;
+      }
+      int middle = (first + last) >>> 1;
+      invokeAll(new Bands(first, middle, height, bandHeight, task),
+              new Bands(middle, last, height, bandHeight, task));
+    }
+  }
+}
@@ -0,0 +1,333 @@
+package utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import utility.raster.Raster;
+
+/**
+ * Writes an RGB PNG file, filtering and compressing blocks of rows on several threads at once in
+ * the way pigz does. Every block is deflated on its own, primed with the last 32 KiB of the
+ * block before it so that little compression is lost, and all but the last block end with a
+ * sync flush so that their outputs join into a single zlib stream. The checksum of the whole
+ * stream is combined from the checksums of the blocks. Blocks are written out in order as soon
+ * as they are done, and only a few more than there are threads are kept in memory at a time.
+ */
+public final class ParallelPNGEncoder {
+
+  /**
+   * Images with fewer pixels than this gain little from being split and are left to ImageIO.
+   */
+  public static final long MIN_PIXELS = 1L << 20;
+
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+  private static final int BYTES_PER_PIXEL = 3;
+  private static final int WINDOW = 1 << 15;
+  // The amount of filtered data given to every block.
+  private static final int BLOCK_BYTES = 1 << 18;
+  private static final int ADLER_BASE = 65521;
+
+  // The compressed bytes of a block of rows.
+  private static class Block {
+    byte[] bytes;
+    int length;
+    long adler;
+    long rawLength;
+  }
+
+  private ParallelPNGEncoder() {
+  }
+
+  /**
+   * Writes a PNG file using the threads of the parallel engine.
+   *
+   * @param raster the pixels of the image.
+   * @param level  the deflate level from 0 to 9.
+   * @param out    the stream to write to. It is not closed.
+   * @throws IOException if the stream cannot be written.
+   */
+  public static void write(Raster raster, int level, OutputStream out) throws IOException {
+    int rowBytes = 1 + raster.getWidth() * BYTES_PER_PIXEL;
+    ForkJoinPool pool = ParallelEngine.getPool();
+    write(raster, level, Math.max(1, BLOCK_BYTES / rowBytes), pool, pool.getParallelism(), out);
+  }
+
+  /**
+   * Writes a PNG file.
+   *
+   * @param raster       the pixels of the image.
+   * @param level        the deflate level from 0 to 9.
+   * @param rowsPerBlock the number of rows compressed together.
+   * @param executor     the threads compressing the blocks.
+   * @param parallelism  the number of blocks to compress at a time.
+   * @param out          the stream to write to. It is not closed.
+   * @throws IOException if the stream cannot be written.
+   */
+  public static void write(Raster raster, int level, int rowsPerBlock, ExecutorService executor,
+                           int parallelism, OutputStream out) throws IOException {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    out.write(SIGNATURE);
+    byte[] header = new byte[13];
+    putInt(header, 0, width);
+    putInt(header, 4, height);
+    header[8] = 8;
+    header[9] = 2;
+    writeChunk(out, "IHDR", header, 0, header.length);
+
+    // The zlib header: deflate with a 32 KiB window and no preset dictionary.
+    byte[] zlibHeader = {0x78, (byte) 0x9C};
+    writeChunk(out, "IDAT", zlibHeader, 0, zlibHeader.length);
+
+    int blocks = (height + rowsPerBlock - 1) / rowsPerBlock;
+    Queue<Future<Block>> pending = new ArrayDeque<>();
+    long adler = 1;
+    int next = 0;
+    int written = 0;
+    try {
+      while (written < blocks) {
+        while (next < blocks && pending.size() < 2 * Math.max(parallelism, 1)) {
+          int first = next * rowsPerBlock;
+          int last = Math.min(height, first + rowsPerBlock);
+          boolean end = next == blocks - 1;
+          pending.add(executor.submit(() -> compress(raster, first, last, level, end)));
+          next++;
+        }
+        Block block = pending.remove().get();
+        adler = combine(adler, block.adler, block.rawLength);
+        writeChunk(out, "IDAT", block.bytes, 0, block.length);
+        written++;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing PNG", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      for (Future<Block> future : pending) {
+        future.cancel(true);
+      }
+    }
+
+    if (blocks == 0) {
+      // An empty stream still needs its final block.
+      Deflater deflater = new Deflater(level, true);
+      deflater.finish();
+      byte[] empty = new byte[16];
+      writeChunk(out, "IDAT", empty, 0, deflater.deflate(empty));
+      deflater.end();
+    }
+    byte[] checksum = new byte[4];
+    putInt(checksum, 0, (int) adler);
+    writeChunk(out, "IDAT", checksum, 0, checksum.length);
+    writeChunk(out, "IEND", checksum, 0, 0);
+  }
+
+  // Filters and deflates the rows from first to last, excluding last.
+  private static Block compress(Raster raster, int first, int last, int level, boolean end) {
+    int width = raster.getWidth();
+    int rowBytes = 1 + width * BYTES_PER_PIXEL;
+    int[] pixels = new int[width];
+    byte[] previous = new byte[rowBytes];
+    byte[] current = new byte[rowBytes];
+    byte[] filtered = new byte[rowBytes];
+    byte[] candidate = new byte[rowBytes];
+
+    Deflater deflater = new Deflater(level, true);
+    Block block = new Block();
+    try {
+      // Prime the deflater with the filtered rows that end the block before this one.
+      if (first > 0) {
+        int primed = Math.min(first, (WINDOW + rowBytes - 1) / rowBytes);
+        byte[] dictionary = new byte[primed * rowBytes];
+        if (first - primed > 0) {
+          readRow(raster, first - primed - 1, pixels, previous);
+        }
+        for (int y = first - primed; y < first; y++) {
+          readRow(raster, y, pixels, current);
+          filter(current, y == 0 ? null : previous, filtered, candidate);
+          System.arraycopy(filtered, 0, dictionary, (y - first + primed) * rowBytes, rowBytes);
+          byte[] swap = previous;
+          previous = current;
+          current = swap;
+        }
+        int length = Math.min(dictionary.length, WINDOW);
+        deflater.setDictionary(dictionary, dictionary.length - length, length);
+      }
+
+      Adler32 checksum = new Adler32();
+      byte[] output = new byte[Math.max(1 << 12, (last - first) * rowBytes / 2)];
+      int length = 0;
+      for (int y = first; y < last; y++) {
+        readRow(raster, y, pixels, current);
+        filter(current, y == 0 ? null : previous, filtered, candidate);
+        checksum.update(filtered, 0, rowBytes);
+        deflater.setInput(filtered, 0, rowBytes);
+        while (!deflater.needsInput()) {
+          if (length == output.length) {
+            output = Arrays.copyOf(output, output.length * 2);
+          }
+          length += deflater.deflate(output, length, output.length - length);
+        }
+        byte[] swap = previous;
+        previous = current;
+        current = swap;
+      }
+
+      // The last block ends the stream; the others end on a byte boundary so that the next
+      // block can follow them.
+      if (end) {
+        deflater.finish();
+      }
+      int flush = end ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+      while (true) {
+        if (length == output.length) {
+          output = Arrays.copyOf(output, output.length * 2);
+        }
+        int count = deflater.deflate(output, length, output.length - length, flush);
+        length += count;
+        if (end ? deflater.finished() : length < output.length) {
+          break;
+        }
+      }
+      block.bytes = output;
+      block.length = length;
+      block.adler = checksum.getValue();
+      block.rawLength = (long) (last - first) * rowBytes;
+    } finally {
+      deflater.end();
+    }
+    return block;
+  }
+
+  // Reads a row of the image as RGB bytes after the byte that will hold its filter type.
+  private static void readRow(Raster raster, int y, int[] pixels, byte[] row) {
+    raster.getRow(y, pixels, 0);
+    int i = 1;
+    for (int rgb : pixels) {
+      row[i] = (byte) (rgb >> 16);
+      row[i + 1] = (byte) (rgb >> 8);
+      row[i + 2] = (byte) rgb;
+      i += BYTES_PER_PIXEL;
+    }
+  }
+
+  // Filters a row with each of the five PNG filters and keeps the one with the smallest sum of
+  // absolute values, as libpng does.
+  private static void filter(byte[] row, byte[] previous, byte[] best, byte[] candidate) {
+    long bestSum = Long.MAX_VALUE;
+    for (int type = 0; type < 5; type++) {
+      if (previous == null && (type == 2 || type == 4)) {
+        // Without a row above, Up is the same as None and Paeth the same as Sub.
+        continue;
+      }
+      long sum = apply(type, row, previous, candidate);
+      if (sum < bestSum) {
+        bestSum = sum;
+        System.arraycopy(candidate, 0, best, 0, row.length);
+      }
+    }
+  }
+
+  private static long apply(int type, byte[] row, byte[] previous, byte[] out) {
+    out[0] = (byte) type;
+    long sum = 0;
+    for (int i = 1; i < row.length; i++) {
+      int x = row[i] & 0xFF;
+      int a = i > BYTES_PER_PIXEL ? row[i - BYTES_PER_PIXEL] & 0xFF : 0;
+      int b = previous == null ? 0 : previous[i] & 0xFF;
+      int c = previous == null || i <= BYTES_PER_PIXEL ? 0 : previous[i - BYTES_PER_PIXEL] & 0xFF;
+      int value;
+      switch (type) {
+        case 0:
+          value = x;
+          break;
+        case 1:
+          value = x - a;
+          break;
+        case 2:
+          value = x - b;
+          break;
+        case 3:
+          value = x - ((a + b) >> 1);
+          break;
+        default:
+          value = x - paeth(a, b, c);
+          break;
+      }
+      byte filtered = (byte) value;
+      out[i] = filtered;
+      sum += Math.abs(filtered);
+    }
+    return sum;
+  }
+
+  private static int paeth(int a, int b, int c) {
+    int p = a + b - c;
+    int pa = Math.abs(p - a);
+    int pb = Math.abs(p - b);
+    int pc = Math.abs(p - c);
+    if (pa <= pb && pa <= pc) {
+      return a;
+    }
+    return pb <= pc ? b : c;
+  }
+
+  /**
+   * Combines the Adler-32 checksums of two pieces of data into the checksum of the two pieces
+   * one after the other, as zlib's adler32_combine does.
+   *
+   * @param adler1 the checksum of the first piece.
+   * @param adler2 the checksum of the second piece.
+   * @param length2 the length of the second piece.
+   * @return the checksum of both pieces.
+   */
+  static long combine(long adler1, long adler2, long length2) {
+    long remainder = length2 % ADLER_BASE;
+    long sum1 = adler1 & 0xFFFF;
+    long sum2 = (remainder * sum1) % ADLER_BASE;
+    sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+    sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER_BASE - remainder;
+    sum1 %= ADLER_BASE;
+    sum2 %= ADLER_BASE;
+    return sum1 | (sum2 << 16);
+  }
+
+  private static void putInt(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) (value >>> 24);
+    bytes[offset + 1] = (byte) (value >>> 16);
+    bytes[offset + 2] = (byte) (value >>> 8);
+    bytes[offset + 3] = (byte) value;
+  }
+
+  private static void writeChunk(OutputStream out, String type, byte[] data, int offset,
+                                 int length) throws IOException {
+    byte[] prefix = new byte[8];
+    putInt(prefix, 0, length);
+    for (int i = 0; i < 4; i++) {
+      prefix[4 + i] = (byte) type.charAt(i);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(prefix, 4, 4);
+    crc.update(data, offset, length);
+    out.write(prefix);
+    out.write(data, offset, length);
+    byte[] suffix = new byte[4];
+    putInt(suffix, 0, (int) crc.getValue());
+    out.write(suffix);
+  }
+}
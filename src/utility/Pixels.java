@@ -1,14 +1,18 @@
 package utility;
 
+import utility.raster.Raster;
+import utility.raster.Rasters;
+
 /**
  * This class is used to store the properties of an image. This acts like a structure and object of
  * this class is used in the Hash Map of the model.
+ * The pixels are held by a {@link Raster}, each pixel packed as 0xRRGGBB.
  */
 public class Pixels {
 
   public int width;
   public int height;
-  public String[][] listOfPixels;
+  public Raster raster;
 
   /**
    * Constructor.
@@ -17,12 +21,83 @@ public class Pixels {
    *
    */
   public Pixels(int width, int height) {
-    this.width = width;
-    this.height = height;
-    this.listOfPixels = new String[width][height];
+    this(Rasters.create(width, height));
   }
 
+  /**
+   * Creates a black image of the same size and on the same backend as another image.
+   *
+   * @param another the image to take the size and backend from.
+   */
   public Pixels(Pixels another) {
-    this(another.width, another.height);
+    this(another.raster.createCompatible(another.width, another.height));
+  }
+
+  /**
+   * Wraps an existing raster.
+   *
+   * @param raster the raster holding the pixels.
+   */
+  public Pixels(Raster raster) {
+    this.width = raster.getWidth();
+    this.height = raster.getHeight();
+    this.raster = raster;
+  }
+
+  /**
+   * Gets the packed value of a pixel.
+   *
+   * @param x column of the pixel.
+   * @param y row of the pixel.
+   * @return the pixel packed as 0xRRGGBB.
+   */
+  public int getRGB(int x, int y) {
+    return raster.getRGB(x, y);
+  }
+
+  /**
+   * Sets the packed value of a pixel.
+   *
+   * @param x   column of the pixel.
+   * @param y   row of the pixel.
+   * @param rgb the pixel packed as 0xRRGGBB.
+   */
+  public void setRGB(int x, int y, int rgb) {
+    raster.setRGB(x, y, rgb);
+  }
+
+  /**
+   * Packs the three channels of a pixel into a single int. Each channel must already be
+   * within 0 to 255.
+   *
+   * @param r red channel.
+   * @param g green channel.
+   * @param b blue channel.
+   * @return the pixel packed as 0xRRGGBB.
+   */
+  public static int pack(int r, int g, int b) {
+    return (r << 16) | (g << 8) | b;
+  }
+
+  public static int red(int rgb) {
+    return (rgb >> 16) & 0xFF;
+  }
+
+  public static int green(int rgb) {
+    return (rgb >> 8) & 0xFF;
+  }
+
+  public static int blue(int rgb) {
+    return rgb & 0xFF;
+  }
+
+  /**
+   * Clamps a channel value to the range 0 to 255.
+   *
+   * @param value the channel value.
+   * @return the clamped value.
+   */
+  public static int clamp(int value) {
+    return Math.min(Math.max(value, 0), 255);
   }
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package utility.raster;
+
+/**
+ * This class contains the bulk accessors that every backend gets for free on top of the single
+ * pixel accessors. Backends override them whenever they can move a run of pixels at once.
+ */
+public abstract class AbstractRaster implements Raster {
+
+  // Backends that store whole rows are walked in strips of full rows of about this many pixels.
+  private static final int STRIP_PIXELS = 1 << 16;
+
+  protected final int width;
+  protected final int height;
+
+  protected AbstractRaster(int width, int height) {
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException("Invalid raster size " + width + "x" + height);
+    }
+    this.width = width;
+    this.height = height;
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public int getTileWidth() {
+    return Math.max(width, 1);
+  }
+
+  @Override
+  public int getTileHeight() {
+    return Math.max(1, Math.min(height, STRIP_PIXELS / Math.max(width, 1)));
+  }
+
+  @Override
+  public void getPixels(int x, int y, int w, int h, int[] dst, int offset, int scanlineStride) {
+    for (int row = 0; row < h; row++) {
+      int index = offset + row * scanlineStride;
+      for (int col = 0; col < w; col++) {
+        dst[index + col] = getRGB(x + col, y + row);
+      }
+    }
+  }
+
+  @Override
+  public void setPixels(int x, int y, int w, int h, int[] src, int offset, int scanlineStride) {
+    for (int row = 0; row < h; row++) {
+      int index = offset + row * scanlineStride;
+      for (int col = 0; col < w; col++) {
+        setRGB(x + col, y + row, src[index + col]);
+      }
+    }
+  }
+
+  @Override
+  public void getRow(int y, int[] dst, int offset) {
+    getPixels(0, y, width, 1, dst, offset, width);
+  }
+
+  @Override
+  public void setRow(int y, int[] src, int offset) {
+    setPixels(0, y, width, 1, src, offset, width);
+  }
+
+  @Override
+  public Raster createCompatible(int width, int height) {
+    return getBackend().create(width, height);
+  }
+
+  @Override
+  public Raster copy() {
+    Raster copy = createCompatible(width, height);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      getRow(y, row, 0);
+      copy.setRow(y, row, 0);
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,199 @@
+package utility.raster;
+
+/**
+ * A read-through view of another raster mirrored horizontally, vertically or both. Creating
+ * the view copies no pixel: reads are remapped onto the source. The view is only turned into a
+ * real raster of the source's backend the first time it is written to, so the source itself is
+ * never modified through the view. From then on the view no longer holds on to the source.
+ */
+public class FlippedRaster implements Raster {
+
+  private final int width;
+  private final int height;
+  private final int tileWidth;
+  private final int tileHeight;
+  private final RasterBackend backend;
+  private final boolean horizontal;
+  private final boolean vertical;
+  // The source is dropped only after the materialized raster is set, so a reader that reads the
+  // source first and then finds no materialized raster always has a source to read.
+  private volatile Raster source;
+  private volatile Raster materialized;
+
+  private FlippedRaster(Raster source, boolean horizontal, boolean vertical) {
+    this.width = source.getWidth();
+    this.height = source.getHeight();
+    this.tileWidth = source.getTileWidth();
+    this.tileHeight = source.getTileHeight();
+    this.backend = source.getBackend();
+    this.source = source;
+    this.horizontal = horizontal;
+    this.vertical = vertical;
+  }
+
+  /**
+   * Creates a flipped view of a raster. Flipping a view that has not been written to yet
+   * combines both flips into a single view of the original source, so chains of flips never
+   * stack up.
+   *
+   * @param source     the raster to flip.
+   * @param horizontal whether to mirror the columns.
+   * @param vertical   whether to mirror the rows.
+   * @return the view.
+   */
+  public static FlippedRaster of(Raster source, boolean horizontal, boolean vertical) {
+    if (source instanceof FlippedRaster) {
+      FlippedRaster view = (FlippedRaster) source;
+      Raster original = view.source;
+      if (view.materialized == null) {
+        return new FlippedRaster(original, view.horizontal ^ horizontal,
+                view.vertical ^ vertical);
+      }
+    }
+    return new FlippedRaster(source, horizontal, vertical);
+  }
+
+  /**
+   * Checks whether the view has been turned into a real raster.
+   *
+   * @return true once the view has been written to.
+   */
+  public boolean isMaterialized() {
+    return materialized != null;
+  }
+
+  // Copies the flipped pixels into a raster of their own, the first time the view is written.
+  private Raster target() {
+    Raster target = materialized;
+    if (target == null) {
+      synchronized (this) {
+        target = materialized;
+        if (target == null) {
+          target = flippedCopy(source);
+          materialized = target;
+          source = null;
+        }
+      }
+    }
+    return target;
+  }
+
+  private Raster flippedCopy(Raster source) {
+    Raster copy = source.createCompatible(width, height);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      readFlipped(source, 0, y, width, row, 0);
+      copy.setRow(y, row, 0);
+    }
+    return copy;
+  }
+
+  // Reads a run of one row of the view from the source.
+  private void readFlipped(Raster source, int x, int y, int w, int[] dst, int offset) {
+    int sourceX = horizontal ? source.getWidth() - x - w : x;
+    int sourceY = vertical ? source.getHeight() - 1 - y : y;
+    source.getPixels(sourceX, sourceY, w, 1, dst, offset, w);
+    if (horizontal) {
+      for (int i = offset, j = offset + w - 1; i < j; i++, j--) {
+        int swap = dst[i];
+        dst[i] = dst[j];
+        dst[j] = swap;
+      }
+    }
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public int getTileWidth() {
+    return tileWidth;
+  }
+
+  @Override
+  public int getTileHeight() {
+    return tileHeight;
+  }
+
+  @Override
+  public int getRGB(int x, int y) {
+    Raster source = this.source;
+    Raster target = materialized;
+    if (target != null) {
+      return target.getRGB(x, y);
+    }
+    return source.getRGB(horizontal ? source.getWidth() - 1 - x : x,
+            vertical ? source.getHeight() - 1 - y : y);
+  }
+
+  @Override
+  public void setRGB(int x, int y, int rgb) {
+    target().setRGB(x, y, rgb);
+  }
+
+  @Override
+  public void getPixels(int x, int y, int w, int h, int[] dst, int offset, int scanlineStride) {
+    Raster source = this.source;
+    Raster target = materialized;
+    if (target != null) {
+      target.getPixels(x, y, w, h, dst, offset, scanlineStride);
+      return;
+    }
+    for (int row = 0; row < h; row++) {
+      readFlipped(source, x, y + row, w, dst, offset + row * scanlineStride);
+    }
+  }
+
+  @Override
+  public void setPixels(int x, int y, int w, int h, int[] src, int offset, int scanlineStride) {
+    target().setPixels(x, y, w, h, src, offset, scanlineStride);
+  }
+
+  @Override
+  public void getRow(int y, int[] dst, int offset) {
+    getPixels(0, y, getWidth(), 1, dst, offset, getWidth());
+  }
+
+  @Override
+  public void setRow(int y, int[] src, int offset) {
+    target().setRow(y, src, offset);
+  }
+
+  @Override
+  public Raster createCompatible(int width, int height) {
+    Raster source = this.source;
+    Raster target = materialized;
+    return (target != null ? target : source).createCompatible(width, height);
+  }
+
+  @Override
+  public Raster copy() {
+    Raster source = this.source;
+    Raster target = materialized;
+    if (target != null) {
+      return target.copy();
+    }
+    return flippedCopy(source);
+  }
+
+  @Override
+  public RasterBackend getBackend() {
+    return backend;
+  }
+
+  // The view keeps its source alive until it is materialized, so until then it holds as much
+  // memory as the source.
+  @Override
+  public long getSizeInBytes() {
+    Raster source = this.source;
+    Raster target = materialized;
+    return target != null ? target.getSizeInBytes() : source.getSizeInBytes();
+  }
+}
@@ -0,0 +1,185 @@
+package utility.raster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Off-heap backend for images too large for a Java array or the heap. The pixels are packed
+ * ints kept in direct buffers outside the garbage collected heap. Since a single buffer is
+ * indexed by an int, the image is spread over chunks of 2^28 pixels (1 GiB) by default and
+ * pixels are addressed by a long index, so the total size is not limited by the heap.
+ *
+ * <p>The JVM caps the memory of direct buffers with {@code -XX:MaxDirectMemorySize}, which is
+ * the maximum heap size unless it is set. Large images therefore need that flag rather than a
+ * large heap, for example {@code -XX:MaxDirectMemorySize=16g -Dime.raster.backend=offheap}.
+ * Without it, creating a raster larger than the cap fails with an OutOfMemoryError.
+ */
+public class OffHeapRaster extends AbstractRaster {
+
+  private static final int DEFAULT_CHUNK_BITS = 28;
+
+  public static final RasterBackend BACKEND = new RasterBackend() {
+    @Override
+    public String getName() {
+      return "offheap";
+    }
+
+    @Override
+    public Raster create(int width, int height) {
+      return new OffHeapRaster(width, height);
+    }
+  };
+
+  private final int chunkBits;
+  private final int chunkPixels;
+  private final long chunkMask;
+  private final IntBuffer[] chunks;
+
+  /**
+   * Constructor.
+   *
+   * @param width  width of the raster.
+   * @param height height of the raster.
+   */
+  public OffHeapRaster(int width, int height) {
+    this(width, height, DEFAULT_CHUNK_BITS);
+  }
+
+  /**
+   * Constructor with an explicit chunk size.
+   *
+   * @param width     width of the raster.
+   * @param height    height of the raster.
+   * @param chunkBits each chunk holds 2^chunkBits pixels, at most 2^28.
+   */
+  public OffHeapRaster(int width, int height, int chunkBits) {
+    super(width, height);
+    if (chunkBits < 1 || chunkBits > DEFAULT_CHUNK_BITS) {
+      throw new IllegalArgumentException("Invalid chunk size 2^" + chunkBits);
+    }
+    this.chunkBits = chunkBits;
+    this.chunkPixels = 1 << chunkBits;
+    this.chunkMask = chunkPixels - 1;
+    long pixels = (long) width * height;
+    int count = (int) ((pixels + chunkPixels - 1) >>> chunkBits);
+    this.chunks = new IntBuffer[count];
+    for (int i = 0; i < count; i++) {
+      long size = Math.min(chunkPixels, pixels - ((long) i << chunkBits));
+      chunks[i] = ByteBuffer.allocateDirect((int) size * 4)
+              .order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+  }
+
+  // Wraps chunks that are already filled.
+  private OffHeapRaster(int width, int height, IntBuffer[] chunks) {
+    super(width, height);
+    this.chunkBits = DEFAULT_CHUNK_BITS;
+    this.chunkPixels = 1 << chunkBits;
+    this.chunkMask = chunkPixels - 1;
+    this.chunks = chunks;
+  }
+
+  /**
+   * Creates a raster over pixels stored in a file, packed as 0xRRGGBB ints row after row. The
+   * file is mapped into memory rather than read, so pages are only loaded when first touched.
+   * The mapping is private: setting pixels never changes the file, and the raster keeps the
+   * pixels it was created with as long as the file is replaced rather than written over.
+   *
+   * @param channel the file, opened for reading and writing as private mappings require.
+   * @param offset  the position of the first pixel in the file.
+   * @param width   width of the raster.
+   * @param height  height of the raster.
+   * @param order   the byte order of the pixels in the file.
+   * @return the raster.
+   * @throws IOException if the file cannot be mapped.
+   */
+  public static OffHeapRaster map(FileChannel channel, long offset, int width, int height,
+                                  ByteOrder order) throws IOException {
+    int chunkPixels = 1 << DEFAULT_CHUNK_BITS;
+    long pixels = (long) width * height;
+    int count = (int) ((pixels + chunkPixels - 1) >>> DEFAULT_CHUNK_BITS);
+    IntBuffer[] chunks = new IntBuffer[count];
+    for (int i = 0; i < count; i++) {
+      long first = (long) i << DEFAULT_CHUNK_BITS;
+      long size = Math.min(chunkPixels, pixels - first);
+      chunks[i] = channel.map(FileChannel.MapMode.PRIVATE, offset + first * 4, size * 4)
+              .order(order).asIntBuffer();
+    }
+    return new OffHeapRaster(width, height, chunks);
+  }
+
+  private long index(int x, int y) {
+    return (long) y * width + x;
+  }
+
+  @Override
+  public int getRGB(int x, int y) {
+    long index = index(x, y);
+    return chunks[(int) (index >>> chunkBits)].get((int) (index & chunkMask));
+  }
+
+  @Override
+  public void setRGB(int x, int y, int rgb) {
+    long index = index(x, y);
+    chunks[(int) (index >>> chunkBits)].put((int) (index & chunkMask), rgb);
+  }
+
+  @Override
+  public void getPixels(int x, int y, int w, int h, int[] dst, int offset, int scanlineStride) {
+    for (int row = 0; row < h; row++) {
+      long index = index(x, y + row);
+      int out = offset + row * scanlineStride;
+      int remaining = w;
+      // A run of pixels may cross into the next chunk.
+      while (remaining > 0) {
+        int chunk = (int) (index >>> chunkBits);
+        int position = (int) (index & chunkMask);
+        int length = Math.min(remaining, chunkPixels - position);
+        chunks[chunk].get(position, dst, out, length);
+        index += length;
+        out += length;
+        remaining -= length;
+      }
+    }
+  }
+
+  @Override
+  public void setPixels(int x, int y, int w, int h, int[] src, int offset, int scanlineStride) {
+    for (int row = 0; row < h; row++) {
+      long index = index(x, y + row);
+      int in = offset + row * scanlineStride;
+      int remaining = w;
+      while (remaining > 0) {
+        int chunk = (int) (index >>> chunkBits);
+        int position = (int) (index & chunkMask);
+        int length = Math.min(remaining, chunkPixels - position);
+        chunks[chunk].put(position, src, in, length);
+        index += length;
+        in += length;
+        remaining -= length;
+      }
+    }
+  }
+
+  @Override
+  public Raster copy() {
+    OffHeapRaster copy = new OffHeapRaster(width, height, chunkBits);
+    for (int i = 0; i < chunks.length; i++) {
+      copy.chunks[i].put(0, chunks[i], 0, chunks[i].capacity());
+    }
+    return copy;
+  }
+
+  @Override
+  public RasterBackend getBackend() {
+    return BACKEND;
+  }
+
+  @Override
+  public long getSizeInBytes() {
+    return 4L * width * height;
+  }
+}
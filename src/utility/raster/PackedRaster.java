@@ -0,0 +1,97 @@
+package utility.raster;
+
+/**
+ * Heap backend that keeps the whole image in one int array, one packed pixel per element,
+ * row after row. The scanline stride is equal to the width.
+ */
+public class PackedRaster extends AbstractRaster {
+
+  public static final RasterBackend BACKEND = new RasterBackend() {
+    @Override
+    public String getName() {
+      return "packed";
+    }
+
+    @Override
+    public Raster create(int width, int height) {
+      return new PackedRaster(width, height);
+    }
+  };
+
+  private final int[] data;
+
+  /**
+   * Constructor.
+   *
+   * @param width  width of the raster.
+   * @param height height of the raster.
+   */
+  public PackedRaster(int width, int height) {
+    super(width, height);
+    if ((long) width * height > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Image too large for the packed backend: "
+              + width + "x" + height);
+    }
+    this.data = new int[width * height];
+  }
+
+  /**
+   * Gets the backing array. Pixel (x, y) is stored at {@code y * width + x}.
+   *
+   * @return the backing array.
+   */
+  public int[] getData() {
+    return data;
+  }
+
+  @Override
+  public int getRGB(int x, int y) {
+    return data[y * width + x];
+  }
+
+  @Override
+  public void setRGB(int x, int y, int rgb) {
+    data[y * width + x] = rgb;
+  }
+
+  @Override
+  public void getPixels(int x, int y, int w, int h, int[] dst, int offset, int scanlineStride) {
+    for (int row = 0; row < h; row++) {
+      System.arraycopy(data, (y + row) * width + x, dst, offset + row * scanlineStride, w);
+    }
+  }
+
+  @Override
+  public void setPixels(int x, int y, int w, int h, int[] src, int offset, int scanlineStride) {
+    for (int row = 0; row < h; row++) {
+      System.arraycopy(src, offset + row * scanlineStride, data, (y + row) * width + x, w);
+    }
+  }
+
+  @Override
+  public void getRow(int y, int[] dst, int offset) {
+    System.arraycopy(data, y * width, dst, offset, width);
+  }
+
+  @Override
+  public void setRow(int y, int[] src, int offset) {
+    System.arraycopy(src, offset, data, y * width, width);
+  }
+
+  @Override
+  public Raster copy() {
+    PackedRaster copy = new PackedRaster(width, height);
+    System.arraycopy(data, 0, copy.data, 0, data.length);
+    return copy;
+  }
+
+  @Override
+  public RasterBackend getBackend() {
+    return BACKEND;
+  }
+
+  @Override
+  public long getSizeInBytes() {
+    return 4L * data.length;
+  }
+}
@@ -0,0 +1,177 @@
+package utility.raster;
+
+/**
+ * Heap backend that keeps each channel in its own plane of bytes, so that a channel of the
+ * whole image is one contiguous array. Planes can be shared between rasters: a shared plane is
+ * copied the first time one of its owners writes to it, which lets channel operations such as
+ * rgb-split and rgb-combine hand planes around instead of copying pixels.
+ *
+ * <p>Several threads may write to different pixels of a raster at once: the copy of a shared
+ * plane is made once, under the lock of the raster. A raster must not be shared, with
+ * {@link #sharePlane(int)} or {@link #copy()}, while another thread is writing to it, since that
+ * thread may still be writing to the plane it got before.
+ */
+public class PlanarRaster extends AbstractRaster {
+
+  public static final int RED = 0;
+  public static final int GREEN = 1;
+  public static final int BLUE = 2;
+
+  public static final RasterBackend BACKEND = new RasterBackend() {
+    @Override
+    public String getName() {
+      return "planar";
+    }
+
+    @Override
+    public Raster create(int width, int height) {
+      return new PlanarRaster(width, height);
+    }
+  };
+
+  // The planes and the flags are only changed while holding the lock of the raster.
+  private final byte[][] planes;
+  private final boolean[] shared;
+
+  /**
+   * Constructor.
+   *
+   * @param width  width of the raster.
+   * @param height height of the raster.
+   */
+  public PlanarRaster(int width, int height) {
+    super(width, height);
+    int size = planeSize(width, height);
+    this.planes = new byte[][]{new byte[size], new byte[size], new byte[size]};
+    this.shared = new boolean[3];
+  }
+
+  /**
+   * Creates a raster on top of existing planes. The planes are not copied, they are marked as
+   * shared and copied only when this raster writes to them.
+   *
+   * @param width  width of the raster.
+   * @param height height of the raster.
+   * @param red    red plane.
+   * @param green  green plane.
+   * @param blue   blue plane.
+   */
+  public PlanarRaster(int width, int height, byte[] red, byte[] green, byte[] blue) {
+    super(width, height);
+    int size = planeSize(width, height);
+    if (red.length != size || green.length != size || blue.length != size) {
+      throw new IllegalArgumentException("Planes do not match the raster size");
+    }
+    this.planes = new byte[][]{red, green, blue};
+    this.shared = new boolean[]{true, true, true};
+  }
+
+  private static int planeSize(int width, int height) {
+    if ((long) width * height > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Image too large for the planar backend: "
+              + width + "x" + height);
+    }
+    return width * height;
+  }
+
+  /**
+   * Gets a plane for reading. Pixel (x, y) of the plane is stored at {@code y * width + x}.
+   * The returned array must not be modified, since it may be shared with other rasters.
+   *
+   * @param channel one of RED, GREEN or BLUE.
+   * @return the plane.
+   */
+  public byte[] getPlane(int channel) {
+    return planes[channel];
+  }
+
+  /**
+   * Gets a plane for writing, copying it first if it is shared with another raster.
+   *
+   * @param channel one of RED, GREEN or BLUE.
+   * @return the plane, owned by this raster only.
+   */
+  public synchronized byte[] getWritablePlane(int channel) {
+    if (shared[channel]) {
+      planes[channel] = planes[channel].clone();
+      shared[channel] = false;
+    }
+    return planes[channel];
+  }
+
+  /**
+   * Gets a plane to be handed to another raster. The plane becomes shared, so whichever owner
+   * writes to it first works on its own copy.
+   *
+   * @param channel one of RED, GREEN or BLUE.
+   * @return the plane.
+   */
+  public synchronized byte[] sharePlane(int channel) {
+    shared[channel] = true;
+    return planes[channel];
+  }
+
+  @Override
+  public int getRGB(int x, int y) {
+    int index = y * width + x;
+    return ((planes[RED][index] & 0xFF) << 16)
+            | ((planes[GREEN][index] & 0xFF) << 8)
+            | (planes[BLUE][index] & 0xFF);
+  }
+
+  @Override
+  public void setRGB(int x, int y, int rgb) {
+    int index = y * width + x;
+    getWritablePlane(RED)[index] = (byte) (rgb >> 16);
+    getWritablePlane(GREEN)[index] = (byte) (rgb >> 8);
+    getWritablePlane(BLUE)[index] = (byte) rgb;
+  }
+
+  @Override
+  public void getPixels(int x, int y, int w, int h, int[] dst, int offset, int scanlineStride) {
+    byte[] red = planes[RED];
+    byte[] green = planes[GREEN];
+    byte[] blue = planes[BLUE];
+    for (int row = 0; row < h; row++) {
+      int index = (y + row) * width + x;
+      int out = offset + row * scanlineStride;
+      for (int col = 0; col < w; col++) {
+        dst[out + col] = ((red[index + col] & 0xFF) << 16)
+                | ((green[index + col] & 0xFF) << 8)
+                | (blue[index + col] & 0xFF);
+      }
+    }
+  }
+
+  @Override
+  public void setPixels(int x, int y, int w, int h, int[] src, int offset, int scanlineStride) {
+    byte[] red = getWritablePlane(RED);
+    byte[] green = getWritablePlane(GREEN);
+    byte[] blue = getWritablePlane(BLUE);
+    for (int row = 0; row < h; row++) {
+      int index = (y + row) * width + x;
+      int in = offset + row * scanlineStride;
+      for (int col = 0; col < w; col++) {
+        int rgb = src[in + col];
+        red[index + col] = (byte) (rgb >> 16);
+        green[index + col] = (byte) (rgb >> 8);
+        blue[index + col] = (byte) rgb;
+      }
+    }
+  }
+
+  @Override
+  public Raster copy() {
+    return new PlanarRaster(width, height, sharePlane(RED), sharePlane(GREEN), sharePlane(BLUE));
+  }
+
+  @Override
+  public RasterBackend getBackend() {
+    return BACKEND;
+  }
+
+  @Override
+  public long getSizeInBytes() {
+    return 3L * width * height;
+  }
+}
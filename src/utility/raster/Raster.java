@@ -0,0 +1,133 @@
+package utility.raster;
+
+/**
+ * This interface represents the storage of the pixels of an image. Pixels are exchanged as ints
+ * packed as 0xRRGGBB and are addressed row-major, so walking an image scanline by scanline
+ * touches the storage sequentially for every backend.
+ */
+public interface Raster {
+
+  /**
+   * Gets the width of the raster.
+   *
+   * @return the number of pixels in a row.
+   */
+  int getWidth();
+
+  /**
+   * Gets the height of the raster.
+   *
+   * @return the number of rows.
+   */
+  int getHeight();
+
+  /**
+   * Gets the width of the blocks this raster is best walked in. Operations that process the
+   * image block by block, in row-major order of the blocks, touch the storage in its natural
+   * order.
+   *
+   * @return the width of a block.
+   */
+  int getTileWidth();
+
+  /**
+   * Gets the height of the blocks this raster is best walked in.
+   *
+   * @return the height of a block.
+   */
+  int getTileHeight();
+
+  /**
+   * Gets a single pixel.
+   *
+   * @param x column of the pixel.
+   * @param y row of the pixel.
+   * @return the pixel packed as 0xRRGGBB.
+   */
+  int getRGB(int x, int y);
+
+  /**
+   * Sets a single pixel.
+   *
+   * @param x   column of the pixel.
+   * @param y   row of the pixel.
+   * @param rgb the pixel packed as 0xRRGGBB.
+   */
+  void setRGB(int x, int y, int rgb);
+
+  /**
+   * Reads a rectangular region into an array. Row r of the region is stored starting at
+   * {@code offset + r * scanlineStride}.
+   *
+   * @param x              left column of the region.
+   * @param y              top row of the region.
+   * @param w              width of the region.
+   * @param h              height of the region.
+   * @param dst            destination array.
+   * @param offset         index in the destination array of the first pixel.
+   * @param scanlineStride distance in the destination array between two rows.
+   */
+  void getPixels(int x, int y, int w, int h, int[] dst, int offset, int scanlineStride);
+
+  /**
+   * Writes a rectangular region from an array. Row r of the region is read starting at
+   * {@code offset + r * scanlineStride}.
+   *
+   * @param x              left column of the region.
+   * @param y              top row of the region.
+   * @param w              width of the region.
+   * @param h              height of the region.
+   * @param src            source array.
+   * @param offset         index in the source array of the first pixel.
+   * @param scanlineStride distance in the source array between two rows.
+   */
+  void setPixels(int x, int y, int w, int h, int[] src, int offset, int scanlineStride);
+
+  /**
+   * Reads a whole scanline.
+   *
+   * @param y      the row to read.
+   * @param dst    destination array, it must hold at least width pixels after offset.
+   * @param offset index in the destination array of the first pixel.
+   */
+  void getRow(int y, int[] dst, int offset);
+
+  /**
+   * Writes a whole scanline.
+   *
+   * @param y      the row to write.
+   * @param src    source array, it must hold at least width pixels after offset.
+   * @param offset index in the source array of the first pixel.
+   */
+  void setRow(int y, int[] src, int offset);
+
+  /**
+   * Creates a new, black raster of the given size using the same backend as this one.
+   *
+   * @param width  width of the new raster.
+   * @param height height of the new raster.
+   * @return the new raster.
+   */
+  Raster createCompatible(int width, int height);
+
+  /**
+   * Creates an independent copy of this raster using the same backend.
+   *
+   * @return the copy.
+   */
+  Raster copy();
+
+  /**
+   * Gets the backend that created this raster.
+   *
+   * @return the backend.
+   */
+  RasterBackend getBackend();
+
+  /**
+   * Gets the approximate memory held by this raster.
+   *
+   * @return the size in bytes.
+   */
+  long getSizeInBytes();
+}
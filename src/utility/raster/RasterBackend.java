@@ -0,0 +1,25 @@
+package utility.raster;
+
+/**
+ * Service interface for the storage backends of a raster. A backend is registered with
+ * {@link Rasters} either directly or through {@link java.util.ServiceLoader}, and can then be
+ * selected by its name.
+ */
+public interface RasterBackend {
+
+  /**
+   * Gets the name used to select this backend.
+   *
+   * @return the name of the backend.
+   */
+  String getName();
+
+  /**
+   * Creates a new, black raster.
+   *
+   * @param width  width of the raster.
+   * @param height height of the raster.
+   * @return the new raster.
+   */
+  Raster create(int width, int height);
+}
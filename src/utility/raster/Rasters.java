@@ -0,0 +1,82 @@
+package utility.raster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the available raster backends: "packed" keeps one int per pixel, "planar"
+ * keeps one byte plane per channel, "offheap" keeps the pixels in native memory and "tiled"
+ * allocates square tiles on demand. The backend used for new images is "packed" unless the
+ * system property {@code ime.raster.backend} names another one, and it can be changed at
+ * runtime with {@link #setDefaultBackend(String)}.
+ */
+public final class Rasters {
+
+  private static final Map<String, RasterBackend> backends = new LinkedHashMap<>();
+  private static volatile RasterBackend defaultBackend;
+
+  static {
+    register(PackedRaster.BACKEND);
+    register(PlanarRaster.BACKEND);
+    register(OffHeapRaster.BACKEND);
+    register(TiledRaster.BACKEND);
+    for (RasterBackend backend : ServiceLoader.load(RasterBackend.class)) {
+      register(backend);
+    }
+    defaultBackend = getBackend(System.getProperty("ime.raster.backend", "packed"));
+  }
+
+  private Rasters() {
+  }
+
+  /**
+   * Registers a backend, replacing any backend registered before under the same name.
+   *
+   * @param backend the backend to register.
+   */
+  public static synchronized void register(RasterBackend backend) {
+    backends.put(backend.getName(), backend);
+  }
+
+  /**
+   * Gets a registered backend by its name.
+   *
+   * @param name name of the backend.
+   * @return the backend.
+   * @throws IllegalArgumentException if no backend is registered with this name.
+   */
+  public static synchronized RasterBackend getBackend(String name)
+          throws IllegalArgumentException {
+    RasterBackend backend = backends.get(name);
+    if (backend == null) {
+      throw new IllegalArgumentException("Unknown raster backend " + name
+              + ", available backends are " + backends.keySet());
+    }
+    return backend;
+  }
+
+  public static RasterBackend getDefaultBackend() {
+    return defaultBackend;
+  }
+
+  /**
+   * Selects the backend used for images created from now on.
+   *
+   * @param name name of a registered backend.
+   */
+  public static void setDefaultBackend(String name) throws IllegalArgumentException {
+    defaultBackend = getBackend(name);
+  }
+
+  /**
+   * Creates a new, black raster with the default backend.
+   *
+   * @param width  width of the raster.
+   * @param height height of the raster.
+   * @return the new raster.
+   */
+  public static Raster create(int width, int height) {
+    return defaultBackend.create(width, height);
+  }
+}
@@ -0,0 +1,184 @@
+package utility.raster;
+
+import java.util.Arrays;
+
+/**
+ * Heap backend that splits the image into square tiles, 256x256 pixels by default, each tile
+ * being its own packed int array. A tile is allocated only when a non-black pixel is first
+ * written to it; until then it reads as black. Operations that walk the image tile by tile keep
+ * their working set small enough to stay in the cache.
+ */
+public class TiledRaster extends AbstractRaster {
+
+  public static final int DEFAULT_TILE_SIZE = 256;
+
+  public static final RasterBackend BACKEND = new RasterBackend() {
+    @Override
+    public String getName() {
+      return "tiled";
+    }
+
+    @Override
+    public Raster create(int width, int height) {
+      return new TiledRaster(width, height, DEFAULT_TILE_SIZE);
+    }
+  };
+
+  private final int tileSize;
+  private final int tilesAcross;
+  private final int[][] tiles;
+
+  /**
+   * Constructor.
+   *
+   * @param width    width of the raster.
+   * @param height   height of the raster.
+   * @param tileSize width and height of a tile.
+   */
+  public TiledRaster(int width, int height, int tileSize) {
+    super(width, height);
+    if (tileSize <= 0) {
+      throw new IllegalArgumentException("Invalid tile size " + tileSize);
+    }
+    this.tileSize = tileSize;
+    this.tilesAcross = (width + tileSize - 1) / tileSize;
+    int tilesDown = (height + tileSize - 1) / tileSize;
+    this.tiles = new int[tilesAcross * tilesDown][];
+  }
+
+  /**
+   * Checks whether a tile holds any pixel yet.
+   *
+   * @param tileX column of the tile.
+   * @param tileY row of the tile.
+   * @return true if the tile has been allocated.
+   */
+  public boolean isTileAllocated(int tileX, int tileY) {
+    return tiles[tileY * tilesAcross + tileX] != null;
+  }
+
+  private int[] tileForWrite(int tileIndex) {
+    int[] tile = tiles[tileIndex];
+    if (tile == null) {
+      tile = new int[tileSize * tileSize];
+      tiles[tileIndex] = tile;
+    }
+    return tile;
+  }
+
+  @Override
+  public int getTileWidth() {
+    return tileSize;
+  }
+
+  @Override
+  public int getTileHeight() {
+    return tileSize;
+  }
+
+  @Override
+  public int getRGB(int x, int y) {
+    int[] tile = tiles[(y / tileSize) * tilesAcross + x / tileSize];
+    if (tile == null) {
+      return 0;
+    }
+    return tile[(y % tileSize) * tileSize + x % tileSize];
+  }
+
+  @Override
+  public void setRGB(int x, int y, int rgb) {
+    int tileIndex = (y / tileSize) * tilesAcross + x / tileSize;
+    if (rgb == 0 && tiles[tileIndex] == null) {
+      return;
+    }
+    tileForWrite(tileIndex)[(y % tileSize) * tileSize + x % tileSize] = rgb;
+  }
+
+  @Override
+  public void getPixels(int x, int y, int w, int h, int[] dst, int offset, int scanlineStride) {
+    for (int row = 0; row < h; row++) {
+      int py = y + row;
+      int tileRow = (py / tileSize) * tilesAcross;
+      int inTile = (py % tileSize) * tileSize;
+      int out = offset + row * scanlineStride;
+      int px = x;
+      int end = x + w;
+      // Copy the run of this row that falls into each tile.
+      while (px < end) {
+        int tileX = px / tileSize;
+        int length = Math.min(end, (tileX + 1) * tileSize) - px;
+        int[] tile = tiles[tileRow + tileX];
+        if (tile == null) {
+          Arrays.fill(dst, out, out + length, 0);
+        } else {
+          System.arraycopy(tile, inTile + px % tileSize, dst, out, length);
+        }
+        px += length;
+        out += length;
+      }
+    }
+  }
+
+  @Override
+  public void setPixels(int x, int y, int w, int h, int[] src, int offset, int scanlineStride) {
+    for (int row = 0; row < h; row++) {
+      int py = y + row;
+      int tileRow = (py / tileSize) * tilesAcross;
+      int inTile = (py % tileSize) * tileSize;
+      int in = offset + row * scanlineStride;
+      int px = x;
+      int end = x + w;
+      while (px < end) {
+        int tileX = px / tileSize;
+        int length = Math.min(end, (tileX + 1) * tileSize) - px;
+        if (tiles[tileRow + tileX] != null || !isBlack(src, in, length)) {
+          System.arraycopy(src, in, tileForWrite(tileRow + tileX),
+                  inTile + px % tileSize, length);
+        }
+        px += length;
+        in += length;
+      }
+    }
+  }
+
+  private static boolean isBlack(int[] pixels, int from, int length) {
+    for (int i = from; i < from + length; i++) {
+      if (pixels[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Raster createCompatible(int width, int height) {
+    return new TiledRaster(width, height, tileSize);
+  }
+
+  @Override
+  public Raster copy() {
+    TiledRaster copy = new TiledRaster(width, height, tileSize);
+    for (int i = 0; i < tiles.length; i++) {
+      if (tiles[i] != null) {
+        copy.tiles[i] = tiles[i].clone();
+      }
+    }
+    return copy;
+  }
+
+  @Override
+  public RasterBackend getBackend() {
+    return BACKEND;
+  }
+
+  @Override
+  public long getSizeInBytes() {
+    long allocated = 0;
+    for (int[] tile : tiles) {
+      if (tile != null) {
+        allocated++;
+      }
+    }
+    return allocated * tileSize * tileSize * 4;
+  }
+}
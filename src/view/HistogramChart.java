@@ -60,18 +60,19 @@ public class HistogramChart implements IHistogram {
   private XYSeriesCollection getXySeriesCollection(Pixels properties) {
     int width = properties.width;
     int height = properties.height;
+    int[] row = new int[width];
     for (int y = 0; y < height; y++) {
+      properties.raster.getRow(y, row, 0);
       for (int x = 0; x < width; x++) {
 
-        String[] arr = properties.listOfPixels[x][y].split(" ");
-        int intensityValue = (Integer.parseInt(arr[0]) + Integer.parseInt(arr[1])
-            + Integer.parseInt(arr[2])) / 3;
-        this.redFrequencyMap.put(Integer.parseInt(arr[0]),
-            this.redFrequencyMap.get(Integer.parseInt(arr[0])) + 1);
-        this.greenFrequencyMap.put(Integer.parseInt(arr[1]),
-            this.greenFrequencyMap.get(Integer.parseInt(arr[1])) + 1);
-        this.blueFrequencyMap.put(Integer.parseInt(arr[2]),
-            this.blueFrequencyMap.get(Integer.parseInt(arr[2])) + 1);
+        int rgb = row[x];
+        int red = Pixels.red(rgb);
+        int green = Pixels.green(rgb);
+        int blue = Pixels.blue(rgb);
+        int intensityValue = (red + green + blue) / 3;
+        this.redFrequencyMap.put(red, this.redFrequencyMap.get(red) + 1);
+        this.greenFrequencyMap.put(green, this.greenFrequencyMap.get(green) + 1);
+        this.blueFrequencyMap.put(blue, this.blueFrequencyMap.get(blue) + 1);
         this.intensityFrequencyMap.put(intensityValue,
             this.intensityFrequencyMap.get(intensityValue) + 1);
       }
@@ -1,6 +1,5 @@
 package view;
 
-import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
@@ -33,6 +32,7 @@ import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DocumentFilter;
 import org.jfree.chart.ChartPanel;
+import utility.ImageUtil;
 import utility.Pixels;
 
 /**
@@ -369,22 +369,10 @@ public class JFrameView extends JFrame implements IView {
 
     imagePanel.removeAll();
     for (int i = 0; i < imageLabel.length; i++) {
-      int width = properties[i].width;
-      int height = properties[i].height;
-
       imageLabel[i] = new JLabel();
 
       // Create a new label to hold the image
-      BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-      for (int y = 0; y < height; y++) {
-        for (int x = 0; x < width; x++) {
-          String[] arr = properties[i].listOfPixels[x][y].split(" ");
-          Color temp = new Color(Integer.parseInt(arr[0]),
-              Integer.parseInt(arr[1]),
-              Integer.parseInt(arr[2]));
-          image.setRGB(x, y, temp.getRGB());
-        }
-      }
+      BufferedImage image = ImageUtil.toBufferedImage(properties[i].raster);
 
       imageLabel[i] = new JLabel(new ImageIcon(image));
       imageScrollPane[i] = new JScrollPane(imageLabel[i]);
@@ -2,16 +2,32 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
 
 import model.ConventionalImageManipulationsModel;
 import model.ImageManipulationsModelFactory;
+import model.ImageSession;
 import model.NewImageManipulationsModel;
+import model.PixelKernels;
 import utility.ImageUtil;
+import utility.ParallelEngine;
+import utility.ParallelPNGEncoder;
+import utility.Pixels;
+import utility.raster.Raster;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
@@ -57,6 +73,439 @@ public class ConventionalImageManipulationsModelTest {
     assertNotEquals("", obj.getImageProperties("manhattan-small"));
   }
 
+  @Test
+  public void bulkTransferMatchesGetRGB() {
+    int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+        BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_565_RGB};
+    for (int type : types) {
+      BufferedImage image = new BufferedImage(37, 11, type);
+      for (int y = 0; y < image.getHeight(); y++) {
+        for (int x = 0; x < image.getWidth(); x++) {
+          image.setRGB(x, y, 0x7F000000 | (x * 7919 + y * 104729) & 0xFFFFFF);
+        }
+      }
+      Raster raster = ImageUtil.toRaster(image);
+      for (int y = 0; y < image.getHeight(); y++) {
+        for (int x = 0; x < image.getWidth(); x++) {
+          assertEquals(image.getRGB(x, y) & 0xFFFFFF, raster.getRGB(x, y));
+        }
+      }
+
+      BufferedImage saved = ImageUtil.toBufferedImage(raster);
+      for (int y = 0; y < image.getHeight(); y++) {
+        for (int x = 0; x < image.getWidth(); x++) {
+          assertEquals(raster.getRGB(x, y), saved.getRGB(x, y) & 0xFFFFFF);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void loadJpegDecodesOnce() throws IOException {
+    // The loaded pixels are those of a single decode of the file, with no lossy re-encode.
+    String path = getImagePath("/src/images/sample_jpg.jpeg");
+    BufferedImage image = ImageIO.read(new File(path));
+    ImageUtil.readFile(out, path, "jpeg");
+    obj.loadImage(path, "sample-jpeg", out);
+    Pixels pixels = obj.getImageNameProperties("sample-jpeg");
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        assertEquals(image.getRGB(x, y) & 0xFFFFFF, pixels.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void loadRegionAndScale() throws IOException {
+    String path = getImagePath("/test/testData/manhattan-small.png");
+    BufferedImage image = ImageIO.read(new File(path));
+    Map<String, String> options = new HashMap<>();
+    options.put("region", "10,5,41,30");
+    options.put("scale", "1/3");
+    ImageUtil.setOptions(path, options);
+    try {
+      ImageUtil.readFile(out, path, "png");
+      obj.loadImage(path, "manhattan-part", out);
+    } finally {
+      ImageUtil.setOptions(path, new HashMap<>());
+    }
+    Pixels pixels = obj.getImageNameProperties("manhattan-part");
+    assertEquals(14, pixels.width);
+    assertEquals(10, pixels.height);
+    for (int y = 0; y < pixels.height; y++) {
+      for (int x = 0; x < pixels.width; x++) {
+        assertEquals(image.getRGB(10 + 3 * x, 5 + 3 * y) & 0xFFFFFF, pixels.getRGB(x, y));
+      }
+    }
+  }
+
+  private long saveWithOptions(String path, String name, String value) {
+    Map<String, String> options = new HashMap<>();
+    options.put(name, value);
+    ImageUtil.setOptions(path, options);
+    try {
+      obj.saveImage(path, "manhattan-small", out);
+      assertTrue(ImageUtil.writeFile(ImageUtil.getFileExtension(path), path, out));
+      return new File(path).length();
+    } finally {
+      ImageUtil.setOptions(path, new HashMap<>());
+    }
+  }
+
+  @Test
+  public void saveWithCompressionLevel() {
+    String path = getImagePath("/test/testData/manhattan-compression.png");
+    try {
+      long fastest = saveWithOptions(path, "compression", "0");
+      long smallest = saveWithOptions(path, "compression", "9");
+      assertTrue(smallest < fastest);
+      ImageUtil.readFile(out, path, "png");
+      obj.loadImage(path, "manhattan-compression", out);
+      assertEquals(obj.getImageProperties("manhattan-small"),
+              obj.getImageProperties("manhattan-compression"));
+    } finally {
+      new File(path).delete();
+    }
+  }
+
+  @Test
+  public void saveWithJpegQuality() {
+    String path = getImagePath("/test/testData/manhattan-quality.jpg");
+    try {
+      assertTrue(saveWithOptions(path, "quality", "10")
+              < saveWithOptions(path, "quality", "95"));
+    } finally {
+      new File(path).delete();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void qualityIsOnlyForJpeg() {
+    saveWithOptions(getImagePath("/test/testData/manhattan-quality.png"), "quality", "50");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidCompressionLevel() {
+    saveWithOptions(getImagePath("/test/testData/manhattan-compression.png"), "compression",
+            "10");
+  }
+
+  @Test
+  public void parallelPngEncoderIsLossless() throws Exception {
+    Raster raster = obj.getImageNameProperties("manhattan-small").raster;
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      // Blocks of a single row up to a single block for the whole image.
+      for (int rows : new int[]{1, 5, raster.getHeight()}) {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ParallelPNGEncoder.write(raster, 6, rows, executor, 3, png);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+        for (int y = 0; y < raster.getHeight(); y++) {
+          for (int x = 0; x < raster.getWidth(); x++) {
+            assertEquals(raster.getRGB(x, y), image.getRGB(x, y) & 0xFFFFFF);
+          }
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  // Runs every operation that splits its work into bands and collects the results.
+  private String applyOperations() {
+    obj.brighten(30, "manhattan-small", "parallel-brighten");
+    obj.sepia("manhattan-small", "parallel-sepia");
+    obj.blur("manhattan-small", "parallel-blur");
+    obj.sharpen("manhattan-small", "parallel-sharpen");
+    obj.createGreyScale("luma-component", "manhattan-small", "parallel-luma");
+    obj.rgbSplit("manhattan-small", "parallel-red", "parallel-green", "parallel-blue");
+    obj.rgbCombine("parallel-combine", "parallel-red", "parallel-sepia", "parallel-blur");
+    StringBuilder result = new StringBuilder();
+    for (String name : new String[]{"parallel-brighten", "parallel-sepia", "parallel-blur",
+        "parallel-sharpen", "parallel-luma", "parallel-red", "parallel-combine"}) {
+      result.append(obj.getImageProperties(name));
+    }
+    return result.toString();
+  }
+
+  @Test
+  public void parallelResultsMatchSequential() {
+    int parallelism = ParallelEngine.getParallelism();
+    try {
+      ParallelEngine.setParallelism(1);
+      String expected = applyOperations();
+      ParallelEngine.setParallelism(4);
+      assertEquals(expected, applyOperations());
+    } finally {
+      ParallelEngine.setParallelism(parallelism);
+    }
+  }
+
+  @Test
+  public void oldPoolStillRunsWork() throws Exception {
+    int parallelism = ParallelEngine.getParallelism();
+    try {
+      ForkJoinPool old = ParallelEngine.getPool();
+      ParallelEngine.setParallelism(2);
+      assertEquals(Integer.valueOf(42), old.submit(() -> 42).get());
+    } finally {
+      ParallelEngine.setParallelism(parallelism);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidParallelism() {
+    ParallelEngine.setParallelism(0);
+  }
+
+  @Test
+  public void vectorResultsMatchScalar() {
+    // A kernel that is not separable, and one that is, with weights that are not exact in
+    // binary.
+    double[][] kernel = {{0.1, -0.2, 0.3, 0.05, 0.0}, {0.7, 0.01, -0.3, 0.2, 0.1},
+        {0.0, 0.3, 0.15, -0.1, 0.4}};
+    double[][] separable = {{0.01, 0.02, 0.03}, {0.1, 0.2, 0.3}, {0.3, 0.6, 0.9}};
+    boolean vectorized = PixelKernels.isVectorized();
+    try {
+      PixelKernels.setVectorized(false);
+      obj.convolve(kernel, "manhattan-small", "scalar-convolve");
+      obj.convolve(separable, "manhattan-small", "scalar-separable");
+      String expected = applyOperations();
+
+      PixelKernels.setVectorized(true);
+      obj.convolve(kernel, "manhattan-small", "vector-convolve");
+      obj.convolve(separable, "manhattan-small", "vector-separable");
+      assertEquals(expected, applyOperations());
+      assertEquals(obj.getImageProperties("scalar-convolve"),
+              obj.getImageProperties("vector-convolve"));
+      assertEquals(obj.getImageProperties("scalar-separable"),
+              obj.getImageProperties("vector-separable"));
+    } finally {
+      PixelKernels.setVectorized(vectorized);
+    }
+  }
+
+  @Test
+  public void convolveMatchesBlurAndSharpen() {
+    obj.convolve(new double[][]{{0.0625, 0.125, 0.0625}, {0.125, 0.25, 0.125},
+        {0.0625, 0.125, 0.0625}}, "manhattan-small", "manhattan-convolve-blur");
+    obj.blur("manhattan-small", "manhattan-blur");
+    assertEquals(obj.getImageProperties("manhattan-blur"),
+            obj.getImageProperties("manhattan-convolve-blur"));
+
+    obj.convolve(new double[][]{{-0.125, -0.125, -0.125}, {-0.125, 2.0, -0.125},
+        {-0.125, -0.125, -0.125}}, "manhattan-small", "manhattan-convolve-sharpen");
+    obj.sharpen("manhattan-small", "manhattan-sharpen");
+    assertEquals(obj.getImageProperties("manhattan-sharpen"),
+            obj.getImageProperties("manhattan-convolve-sharpen"));
+  }
+
+  @Test
+  public void convolveLargeKernel() {
+    // A 9x11 kernel that is not separable. The weights are multiples of 1/64, so the sums are
+    // exact and can be checked against a plain weighted sum.
+    double[][] kernel = new double[9][11];
+    for (int i = 0; i < kernel.length; i++) {
+      for (int j = 0; j < kernel[i].length; j++) {
+        kernel[i][j] = ((i * 3 + j * j) % 7 - 3) / 64.0;
+      }
+    }
+    kernel[4][5] += 1.0;
+    obj.convolve(kernel, "manhattan-small", "manhattan-convolve");
+
+    Pixels source = obj.getImageNameProperties("manhattan-small");
+    Pixels result = obj.getImageNameProperties("manhattan-convolve");
+    for (int y = 0; y < source.height; y++) {
+      for (int x = 0; x < source.width; x++) {
+        int expected = 0;
+        if (x >= 5 && y >= 4 && x < source.width - 5 && y < source.height - 4) {
+          double[] sum = new double[3];
+          for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 11; j++) {
+              int rgb = source.getRGB(x + j - 5, y + i - 4);
+              sum[0] += kernel[i][j] * Pixels.red(rgb);
+              sum[1] += kernel[i][j] * Pixels.green(rgb);
+              sum[2] += kernel[i][j] * Pixels.blue(rgb);
+            }
+          }
+          expected = Pixels.pack(Pixels.clamp((int) Math.floor(sum[0])),
+                  Pixels.clamp((int) Math.floor(sum[1])), Pixels.clamp((int) Math.floor(sum[2])));
+        }
+        assertEquals(expected, result.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void convolveFFTNearWholeNumbers() {
+    // 9x9 kernels, which go through the FFT, on an image spanning several tiles. With weights
+    // that are multiples of 1/64 on channels that are multiples of 64 every sum is a whole
+    // number. With weights that are multiples of 1/4096 on any channels, many sums are a tiny
+    // bit below a whole number, and must still be truncated down.
+    Random random = new Random(11);
+    int[][] numerators = new int[9][9];
+    for (int i = 0; i < 9; i++) {
+      for (int j = 0; j < 9; j++) {
+        numerators[i][j] = random.nextInt(41) - 20;
+      }
+    }
+    numerators[4][4] += 64;
+    checkExactConvolution(numerators, 64, 64, random);
+    for (int[] row : numerators) {
+      for (int j = 0; j < row.length; j++) {
+        row[j] = row[j] * 64 + random.nextInt(64);
+      }
+    }
+    checkExactConvolution(numerators, 4096, 1, random);
+  }
+
+  // Convolves a random image whose channels are multiples of a step with the kernel
+  // numerators / denominator, and compares it with the sums worked out exactly in integers.
+  private void checkExactConvolution(int[][] numerators, int denominator, int step,
+                                     Random random) {
+    Pixels image = new Pixels(150, 130);
+    for (int y = 0; y < image.height; y++) {
+      for (int x = 0; x < image.width; x++) {
+        image.raster.setRGB(x, y, Pixels.pack(random.nextInt(256) / step * step,
+                random.nextInt(256) / step * step, random.nextInt(256) / step * step));
+      }
+    }
+    double[][] kernel = new double[numerators.length][numerators[0].length];
+    for (int i = 0; i < kernel.length; i++) {
+      for (int j = 0; j < kernel[i].length; j++) {
+        kernel[i][j] = numerators[i][j] / (double) denominator;
+      }
+    }
+    ImageSession session = new ImageSession();
+    session.getRegistry().put("image", image);
+    NewImageManipulationsModel model = (NewImageManipulationsModel)
+            new ImageManipulationsModelFactory(session).getModel("png");
+    model.convolve(kernel, "image", "image-convolve");
+    Pixels result = model.getImageNameProperties("image-convolve");
+
+    for (int y = 4; y < image.height - 4; y++) {
+      for (int x = 4; x < image.width - 4; x++) {
+        long[] sum = new long[3];
+        for (int i = 0; i < 9; i++) {
+          for (int j = 0; j < 9; j++) {
+            int rgb = image.getRGB(x + j - 4, y + i - 4);
+            sum[0] += (long) numerators[i][j] * Pixels.red(rgb);
+            sum[1] += (long) numerators[i][j] * Pixels.green(rgb);
+            sum[2] += (long) numerators[i][j] * Pixels.blue(rgb);
+          }
+        }
+        int[] channels = new int[3];
+        for (int k = 0; k < 3; k++) {
+          channels[k] = (int) Math.min(Math.max(Math.floorDiv(sum[k], denominator), 0), 255);
+        }
+        assertEquals(Pixels.pack(channels[0], channels[1], channels[2]), result.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void convolveEvenKernel() {
+    obj.convolve(new double[][]{{0.25, 0.25}, {0.25, 0.25}}, "manhattan-small",
+            "manhattan-convolve");
+  }
+
+  @Test
+  public void blurMatchesDoubleFilter() {
+    // Random pixels that are mostly at or next to the ends of the channel range, where the sums
+    // are largest and truncating them is closest to going wrong.
+    int[] values = {0, 1, 2, 127, 128, 253, 254, 255};
+    Random random = new Random(7);
+    Pixels noise = new Pixels(61, 47);
+    for (int y = 0; y < noise.height; y++) {
+      for (int x = 0; x < noise.width; x++) {
+        int[] rgb = new int[3];
+        for (int k = 0; k < 3; k++) {
+          rgb[k] = random.nextInt(4) == 0 ? random.nextInt(256)
+                  : values[random.nextInt(values.length)];
+        }
+        noise.raster.setRGB(x, y, Pixels.pack(rgb[0], rgb[1], rgb[2]));
+      }
+    }
+    ImageSession session = new ImageSession();
+    session.getRegistry().put("noise", noise);
+    NewImageManipulationsModel model = (NewImageManipulationsModel)
+            new ImageManipulationsModelFactory(session).getModel("png");
+    model.blur("noise", "noise-blur");
+    Pixels blurred = model.getImageNameProperties("noise-blur");
+
+    // The weighted sums in doubles, truncated, with black borders.
+    double[][] kernel = {{0.0625, 0.125, 0.0625}, {0.125, 0.25, 0.125},
+        {0.0625, 0.125, 0.0625}};
+    for (int y = 0; y < noise.height; y++) {
+      for (int x = 0; x < noise.width; x++) {
+        int[] channels = new int[3];
+        if (x > 0 && y > 0 && x < noise.width - 1 && y < noise.height - 1) {
+          for (int k = 0; k < 3; k++) {
+            double sum = 0.0;
+            for (int u = -1; u <= 1; u++) {
+              for (int v = -1; v <= 1; v++) {
+                int rgb = noise.getRGB(x + u, y + v);
+                sum += kernel[u + 1][v + 1] * ((rgb >> (16 - 8 * k)) & 0xFF);
+              }
+            }
+            channels[k] = Pixels.clamp((int) sum);
+          }
+        }
+        assertEquals(Pixels.pack(channels[0], channels[1], channels[2]), blurred.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void colourOperationsMatchDoubleWeights() {
+    // Every grey, where the weights of a greyscale add up to a whole number, and a spread of
+    // other colours.
+    Pixels colours = new Pixels(256, 257);
+    for (int x = 0; x < 256; x++) {
+      colours.raster.setRGB(x, 0, Pixels.pack(x, x, x));
+      for (int y = 1; y < 257; y++) {
+        colours.raster.setRGB(x, y, Pixels.pack(x, y - 1, (x * 37 + y * 11) & 0xFF));
+      }
+    }
+    ImageSession session = new ImageSession();
+    session.getRegistry().put("colours", colours);
+    NewImageManipulationsModel model = (NewImageManipulationsModel)
+            new ImageManipulationsModelFactory(session).getModel("png");
+    model.sepia("colours", "colours-sepia");
+    model.createGreyScale("luma-component", "colours", "colours-luma");
+    model.createGreyScale("green-component", "colours", "colours-green");
+    model.rgbSplit("colours", "colours-red", "colours-split-green", "colours-blue");
+
+    double[][] filter = {{0.393, 0.769, 0.189}, {0.349, 0.686, 0.168}, {0.272, 0.534, 0.131}};
+    for (int y = 0; y < 257; y++) {
+      for (int x = 0; x < 256; x++) {
+        int rgb = colours.getRGB(x, y);
+        int r = Pixels.red(rgb);
+        int g = Pixels.green(rgb);
+        int b = Pixels.blue(rgb);
+        int[] sepia = new int[3];
+        for (int i = 0; i < 3; i++) {
+          sepia[i] += r * filter[i][0];
+          sepia[i] += g * filter[i][1];
+          sepia[i] += b * filter[i][2];
+        }
+        assertEquals(Pixels.pack(Pixels.clamp(sepia[0]), Pixels.clamp(sepia[1]),
+                Pixels.clamp(sepia[2])),
+                model.getImageNameProperties("colours-sepia").getRGB(x, y));
+        int luma = (int) (0.2126 * r + 0.7152 * g + 0.0722 * b);
+        assertEquals(Pixels.pack(luma, luma, luma),
+                model.getImageNameProperties("colours-luma").getRGB(x, y));
+        int green = (int) (0.299 * g + 0.587 * g + 0.114 * g);
+        assertEquals(Pixels.pack(green, green, green),
+                model.getImageNameProperties("colours-green").getRGB(x, y));
+        int grey = (int) (0.299 * r + 0.587 * g + 0.114 * b);
+        assertEquals(Pixels.pack(grey, 0, 0),
+                model.getImageNameProperties("colours-red").getRGB(x, y));
+      }
+    }
+  }
+
   @Test
   public void saveImage() {
     Path currentRelativePath = Paths.get("");
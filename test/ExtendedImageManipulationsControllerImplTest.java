@@ -4,6 +4,8 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -11,10 +13,14 @@ import control.ExtendedImageManipulationsControllerImpl;
 import control.ImageManipulationsController;
 import model.IImageManipulationsModelFactory;
 import model.ImageManipulationsModelFactory;
+import model.ImageSession;
 import model.NewImageManipulationsModel;
+import utility.ImageUtil;
 import utility.Pixels;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * This class tests the main working ExtendedImageManipulationControllerImpl.
@@ -43,10 +49,10 @@ public class ExtendedImageManipulationsControllerImplTest
   public void TestNewControllerOrderOfExecution() {
     String expected = "LoadImage successful!\n"
             + "BlurImage successful!\n"
-            + "SaveImage successful!\n"
             + "DitherImage successful!\n"
             + "SepiaImage successful!\n"
-            + "SharpenImage successful!\n";
+            + "SharpenImage successful!\n"
+            + "SaveImage successful!\n";
 
     Path currentRelativePath = Paths.get("");
     String filePath = currentRelativePath.toAbsolutePath()
@@ -58,6 +64,163 @@ public class ExtendedImageManipulationsControllerImplTest
     assertEquals(expected, out.toString());
   }
 
+  @Test
+  public void TestScriptReleasesDeadImages() {
+    Path currentRelativePath = Paths.get("");
+    String filePath = currentRelativePath.toAbsolutePath()
+            + "/test/testData/New_Script_File.txt";
+    ImageSession session = new ImageSession();
+    ImageManipulationsController controller = new ExtendedImageManipulationsControllerImpl(
+            new ImageManipulationsModelFactory(session),
+            out, in);
+    controller.inputFromScriptFile(filePath);
+    assertTrue(out.toString().endsWith("SharpenImage successful!\nSaveImage successful!\n"));
+    // No image of the script is used after the script, and the dither leaves nothing behind.
+    assertTrue(session.getRegistry().isEmpty());
+  }
+
+  @Test
+  public void TestExtraWordsAreIgnored() throws IOException {
+    String dir = Paths.get("").toAbsolutePath() + "/test/testData/";
+    Path script = Files.createTempFile("extra-words-script", ".txt");
+    Files.write(script, ("load " + dir + "manhattan-small.png manhattan from the test data\n"
+            + "save " + dir + "manhattan-extra.ppm manhattan as binary --binary\n").getBytes());
+    try {
+      ImageManipulationsController controller = new ExtendedImageManipulationsControllerImpl(
+              new ImageManipulationsModelFactory(new ImageSession()), out, in);
+      controller.inputFromScriptFile(script.toString());
+      assertEquals("LoadImage successful!\nSaveImage successful!\n", out.toString());
+      byte[] saved = Files.readAllBytes(Paths.get(dir + "manhattan-extra.ppm"));
+      assertEquals("P6", new String(saved, 0, 2));
+    } finally {
+      Files.delete(script);
+      new File(dir + "manhattan-extra.ppm").delete();
+    }
+  }
+
+  @Test
+  public void TestNestedScriptKeepsItsImages() throws IOException {
+    String dir = Paths.get("").toAbsolutePath() + "/test/testData/";
+    Path inner = Files.createTempFile("inner-script", ".txt");
+    Path outer = Files.createTempFile("outer-script", ".txt");
+    Files.write(inner, ("load " + dir + "Test_Image.ppm img\n").getBytes());
+    Files.write(outer, ("run " + inner + "\n"
+            + "brighten 10 img img2\n"
+            + "save " + dir + "Test_Image-nested.ppm img2\n").getBytes());
+    try {
+      ImageManipulationsController controller = new ExtendedImageManipulationsControllerImpl(
+              new ImageManipulationsModelFactory(new ImageSession()), out, in);
+      controller.inputFromScriptFile(outer.toString());
+      assertEquals("LoadImage successful!\nBrightenImage successful!\nSaveImage successful!\n",
+              out.toString());
+    } finally {
+      Files.delete(inner);
+      Files.delete(outer);
+      new File(dir + "Test_Image-nested.ppm").delete();
+    }
+  }
+
+  @Test
+  public void TestScriptKeepsImagesLoadedBeforeIt() throws IOException {
+    String dir = Paths.get("").toAbsolutePath() + "/test/testData/";
+    ImageSession session = new ImageSession();
+    ImageManipulationsModelFactory models = new ImageManipulationsModelFactory(session);
+    ImageUtil.readFile(out, dir + "Test_Image.ppm", "ppm");
+    models.getModel("ppm").loadImage(dir + "Test_Image.ppm", "kept", out);
+    Path script = Files.createTempFile("loaded-script", ".txt");
+    Files.write(script, ("load " + dir + "Test_Image.ppm kept\n"
+            + "brighten 10 kept bright\n"
+            + "save " + dir + "Test_Image-kept.ppm bright\n").getBytes());
+    try {
+      ImageManipulationsController controller = new ExtendedImageManipulationsControllerImpl(
+              models, out, in);
+      controller.inputFromScriptFile(script.toString());
+      // The script replaced kept, but did not create it, so kept outlives the script.
+      assertTrue(session.getRegistry().containsKey("kept"));
+      assertFalse(session.getRegistry().containsKey("bright"));
+    } finally {
+      Files.delete(script);
+      new File(dir + "Test_Image-kept.ppm").delete();
+    }
+  }
+
+  @Test
+  public void TestScriptSavesInBackground() throws IOException {
+    String dir = Paths.get("").toAbsolutePath() + "/test/testData/";
+    Path script = Files.createTempFile("save-script", ".txt");
+    Files.write(script, ("load " + dir + "manhattan-small.png manhattan\n"
+            + "blur manhattan manhattan-blur\n"
+            + "save " + dir + "manhattan-blur.png manhattan-blur\n"
+            + "load " + dir + "manhattan-blur.png manhattan-saved\n"
+            + "save " + dir + "manhattan-saved.ppm manhattan-saved\n"
+            + "save " + dir + "missing/manhattan.png manhattan\n").getBytes());
+    try {
+      ImageManipulationsController controller = new ExtendedImageManipulationsControllerImpl(
+              new ImageManipulationsModelFactory(new ImageSession()), out, in);
+      controller.inputFromScriptFile(script.toString());
+      // The load waits for the file being saved before it, and the saves are reported at the
+      // end of the script in the order they were made.
+      assertEquals("LoadImage successful!\n"
+              + "BlurImage successful!\n"
+              + "LoadImage successful!\n"
+              + "SaveImage successful!\n"
+              + "SaveImage successful!\n"
+              + "File " + dir + "missing/manhattan.png not found!", out.toString());
+      assertTrue(new File(dir + "manhattan-saved.ppm").isFile());
+    } finally {
+      Files.delete(script);
+      new File(dir + "manhattan-blur.png").delete();
+      new File(dir + "manhattan-saved.ppm").delete();
+    }
+  }
+
+  @Test
+  public void checkInputsForConvolve() {
+    String input = "convolve test/testData/Blur_Kernel.txt Test_Image Test_Image-convolve\n"
+            + "Q";
+    in = new ByteArrayInputStream(input.getBytes());
+    ImageManipulationsController controller = new ExtendedImageManipulationsControllerImpl(factory,
+            out, in);
+    controller.inputFromUserCommands();
+    assertEquals("Received 3x3 kernel, inputs Test_Image and Test_Image-convolve",
+            mockLog.toString());
+  }
+
+  @Test
+  public void TestUserCommandsReportSaves() {
+    String dir = Paths.get("").toAbsolutePath() + "/test/testData/";
+    String input = "load " + dir + "manhattan-small.png manhattan\n"
+            + "save " + dir + "manhattan-command.png manhattan\n"
+            + "Q";
+    in = new ByteArrayInputStream(input.getBytes());
+    try {
+      ImageManipulationsController controller = new ExtendedImageManipulationsControllerImpl(
+              new ImageManipulationsModelFactory(new ImageSession()), out, in);
+      controller.inputFromUserCommands();
+      // The save is reported once, either after the next command or when the program quits.
+      String output = out.toString();
+      int saved = output.indexOf("SaveImage successful!");
+      assertTrue(saved >= 0);
+      assertEquals(-1, output.indexOf("SaveImage successful!", saved + 1));
+      assertTrue(new File(dir + "manhattan-command.png").isFile());
+    } finally {
+      new File(dir + "manhattan-command.png").delete();
+    }
+  }
+
+  @Test
+  public void TestConvolveKernelNotFound() {
+    String input = "convolve test/testData/Missing_Kernel.txt Test_Image Test_Image-convolve\n"
+            + "Q";
+    in = new ByteArrayInputStream(input.getBytes());
+    ImageManipulationsController controller = new ExtendedImageManipulationsControllerImpl(factory,
+            out, in);
+    controller.inputFromUserCommands();
+    assertTrue(out.toString().contains("File " + Paths.get("").toAbsolutePath()
+            + "/test/testData/Missing_Kernel.txt not found!"));
+    assertEquals("", mockLog.toString());
+  }
+
   @Test
   public void checkInputsForSepia() {
     String input = "sepia Test_Image Test_Image-sepia\n"
@@ -178,6 +341,14 @@ public class ExtendedImageManipulationsControllerImplTest
       log.append("Received inputs ").append(imageName).append(" and ").append(destinationImageName);
     }
 
+    @Override
+    public void convolve(double[][] kernel, String imageName,
+                         String destinationImageName) throws IllegalArgumentException {
+      log.append("Received ").append(kernel.length).append("x").append(kernel[0].length)
+              .append(" kernel, inputs ").append(imageName).append(" and ")
+              .append(destinationImageName);
+    }
+
     @Override
     public Pixels getImageNameProperties(String imageName) {
       return null;
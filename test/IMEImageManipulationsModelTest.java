@@ -0,0 +1,121 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.ImageManipulationsModelFactory;
+import model.ImageSession;
+import model.NewImageManipulationsModel;
+import utility.ImageUtil;
+import utility.Pixels;
+import utility.raster.OffHeapRaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests the loading and saving of images in the native .ime format.
+ */
+public class IMEImageManipulationsModelTest {
+
+  NewImageManipulationsModel obj;
+  OutputStream out;
+  String path;
+
+  @Before
+  public void setup() {
+    out = new ByteArrayOutputStream();
+    ImageManipulationsModelFactory factory = new ImageManipulationsModelFactory(
+            new ImageSession());
+    NewImageManipulationsModel png = factory.getModel("png");
+    ImageUtil.readFile(out, getImagePath("/test/testData/manhattan-small.png"), "png");
+    png.loadImage(getImagePath("/test/testData/manhattan-small.png"), "manhattan-small", out);
+    obj = factory.getModel("ime");
+    path = getImagePath("/test/testData/manhattan-small.ime");
+  }
+
+  @After
+  public void cleanUp() {
+    new File(path).delete();
+  }
+
+  private String getImagePath(String path) {
+    return Paths.get("").toAbsolutePath() + path;
+  }
+
+  private void save(String imageName) {
+    obj.saveImage(path, imageName, out);
+    assertTrue(ImageUtil.writeFile("ime", path, out));
+  }
+
+  @Test
+  public void roundTripMapsFile() {
+    save("manhattan-small");
+    Pixels image = obj.getImageNameProperties("manhattan-small");
+    assertEquals(16 + 4L * image.width * image.height, new File(path).length());
+
+    ImageUtil.readFile(out, path, "ime");
+    obj.loadImage(path, "manhattan-mapped", out);
+    assertTrue(obj.getImageNameProperties("manhattan-mapped").raster instanceof OffHeapRaster);
+    assertEquals(obj.getImageProperties("manhattan-small"),
+            obj.getImageProperties("manhattan-mapped"));
+  }
+
+  @Test
+  public void loadUnwrittenImage() {
+    // An image that was saved but not written yet is read from the stream.
+    obj.saveImage(path, "manhattan-small", out);
+    obj.loadImage(path, "manhattan-stream", out);
+    assertEquals(obj.getImageProperties("manhattan-small"),
+            obj.getImageProperties("manhattan-stream"));
+  }
+
+  @Test
+  public void savingOverMappedFileKeepsImage() {
+    save("manhattan-small");
+    ImageUtil.readFile(out, path, "ime");
+    obj.loadImage(path, "manhattan-mapped", out);
+    String expected = obj.getImageProperties("manhattan-mapped");
+
+    obj.brighten(40, "manhattan-mapped", "manhattan-bright");
+    save("manhattan-bright");
+    assertEquals(expected, obj.getImageProperties("manhattan-mapped"));
+  }
+
+  @Test
+  public void loadRegionAndScale() {
+    save("manhattan-small");
+    Map<String, String> options = new HashMap<>();
+    options.put("region", "3,4,20,9");
+    options.put("scale", "1/4");
+    ImageUtil.setOptions(path, options);
+    try {
+      ImageUtil.readFile(out, path, "ime");
+      obj.loadImage(path, "manhattan-part", out);
+    } finally {
+      ImageUtil.setOptions(path, new HashMap<>());
+    }
+    Pixels image = obj.getImageNameProperties("manhattan-small");
+    Pixels part = obj.getImageNameProperties("manhattan-part");
+    assertEquals(5, part.width);
+    assertEquals(3, part.height);
+    for (int y = 0; y < part.height; y++) {
+      for (int x = 0; x < part.width; x++) {
+        assertEquals(image.getRGB(3 + 4 * x, 4 + 4 * y), part.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidFile() {
+    ImageUtil.setInputData("invalid.ime", new ByteArrayInputStream("P3 1 1 255".getBytes()));
+    obj.loadImage("invalid.ime", "invalid", out);
+  }
+}
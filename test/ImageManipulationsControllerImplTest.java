@@ -80,14 +80,15 @@ public class ImageManipulationsControllerImplTest {
    */
   @Test
   public void TestControllerOrderOfExecution() {
+    // The file is written in the background and the save is reported at the end of the script.
     String expected = "LoadImage successful!\n"
             + "BrightenImage successful!\n"
-            + "SaveImage successful!\n"
             + "VerticalFlip successful!\n"
             + "HorizontalFlip successful!\n"
             + "CreateGreyscale successful!\n"
             + "RGBSplit successful!\n"
-            + "RGBCombine successful!\n";
+            + "RGBCombine successful!\n"
+            + "SaveImage successful!\n";
 
     Path currentRelativePath = Paths.get("");
     String filePath = currentRelativePath.toAbsolutePath()
@@ -99,6 +100,32 @@ public class ImageManipulationsControllerImplTest {
     assertEquals(expected, out.toString());
   }
 
+  @Test
+  public void TestControllerOrderWithoutSavePool() {
+    String expected = "LoadImage successful!\n"
+            + "BrightenImage successful!\n"
+            + "SaveImage successful!\n"
+            + "VerticalFlip successful!\n"
+            + "HorizontalFlip successful!\n"
+            + "CreateGreyscale successful!\n"
+            + "RGBSplit successful!\n"
+            + "RGBCombine successful!\n";
+
+    Path currentRelativePath = Paths.get("");
+    String filePath = currentRelativePath.toAbsolutePath()
+            + "/test/testData/Script_File.txt";
+    ImageManipulationsModel model = PPMImageManipulationsModel.getInstance();
+    System.setProperty("ime.save.threads", "0");
+    try {
+      ImageManipulationsController controller = new ImageManipulationsControllerImpl(model,
+              out, in);
+      controller.inputFromScriptFile(filePath);
+    } finally {
+      System.clearProperty("ime.save.threads");
+    }
+    assertEquals(expected, out.toString());
+  }
+
   // Test case to check if image brightening before loading is
   //throwing an exception.
 
@@ -370,5 +397,15 @@ public class ImageManipulationsControllerImplTest {
     public Pixels getImageNameProperties(String imageName) {
       return null;
     }
+
+    @Override
+    public boolean containsImage(String imageName) {
+      return false;
+    }
+
+    @Override
+    public void releaseImage(String imageName) {
+      log.append("Released ").append(imageName);
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,193 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.ImageManipulationsModel;
+import model.ImageManipulationsModelFactory;
+import model.ImageRegistry;
+import model.ImageSession;
+import utility.ImageUtil;
+import utility.Pixels;
+import utility.raster.FlippedRaster;
+import utility.raster.PlanarRaster;
+import utility.raster.Raster;
+import utility.raster.TiledRaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests the memory budget of the image registry and the isolation of sessions.
+ */
+public class ImageRegistryTest {
+
+  private Pixels image(Raster raster, int seed) {
+    for (int y = 0; y < raster.getHeight(); y++) {
+      for (int x = 0; x < raster.getWidth(); x++) {
+        raster.setRGB(x, y, (x * 7 + y * 131 + seed) & 0xFFFFFF);
+      }
+    }
+    return new Pixels(raster);
+  }
+
+  private void checkImage(Pixels pixels, int seed) {
+    for (int y = 0; y < pixels.height; y++) {
+      for (int x = 0; x < pixels.width; x++) {
+        assertEquals((x * 7 + y * 131 + seed) & 0xFFFFFF, pixels.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void unlimitedBudgetNeverSpills() {
+    ImageRegistry registry = new ImageRegistry(Long.MAX_VALUE);
+    Pixels first = image(new Pixels(20, 10).raster, 1);
+    registry.put("first", first);
+    registry.put("second", image(new Pixels(20, 10).raster, 2));
+
+    assertSame(first, registry.get("first"));
+    assertEquals(1, registry.getHits());
+    assertEquals(0, registry.getMisses());
+    assertEquals(0, registry.getSpills());
+    assertNull(registry.get("third"));
+  }
+
+  @Test
+  public void leastRecentlyUsedImageIsSpilledAndReloaded() {
+    // Room for a single 20x10 packed image.
+    ImageRegistry registry = new ImageRegistry(20 * 10 * 4);
+    registry.put("first", image(new Pixels(20, 10).raster, 1));
+    registry.put("second", image(new Pixels(20, 10).raster, 2));
+    assertEquals(1, registry.getSpills());
+    assertEquals(20 * 10 * 4, registry.getResidentBytes());
+
+    checkImage(registry.get("first"), 1);
+    assertEquals(1, registry.getMisses());
+    assertEquals(2, registry.getSpills());
+
+    // The first image was reloaded unchanged, so spilling it again costs nothing.
+    checkImage(registry.get("second"), 2);
+    assertEquals(2, registry.getSpills());
+    checkImage(registry.get("second"), 2);
+    assertEquals(1, registry.getHits());
+    assertTrue(registry.containsKey("first"));
+  }
+
+  @Test
+  public void spillFileStopsGrowing() {
+    ImageRegistry registry = new ImageRegistry(20 * 10 * 4);
+    long size = 0;
+    for (int round = 0; round < 10; round++) {
+      // Replacing both images frees their slots, which the next spills reuse.
+      registry.put("first", image(new Pixels(20, 10).raster, round));
+      registry.put("second", image(new Pixels(20, 10).raster, round + 1));
+      checkImage(registry.get("first"), round);
+      checkImage(registry.get("second"), round + 1);
+      if (round == 1) {
+        size = registry.getSpillFileSize();
+      }
+    }
+    assertEquals(20 * 10 * 4 * 2, size);
+    assertEquals(size, registry.getSpillFileSize());
+
+    registry.remove("first");
+    registry.remove("second");
+    assertEquals(0, registry.getSpillFileSize());
+  }
+
+  @Test
+  public void reloadKeepsBackend() {
+    ImageRegistry registry = new ImageRegistry(0);
+    registry.put("planar", image(new PlanarRaster(9, 6), 3));
+    registry.put("other", image(new Pixels(9, 6).raster, 4));
+
+    Pixels planar = registry.get("planar");
+    assertTrue(planar.raster instanceof PlanarRaster);
+    checkImage(planar, 3);
+  }
+
+  @Test
+  public void flippedImageIsCountedWhenReadBack() {
+    // The view is as large as the few small tiles of its source, but it is read back into a
+    // raster with the default tile size.
+    ImageRegistry registry = new ImageRegistry(0);
+    Raster source = image(new TiledRaster(20, 10, 4), 5).raster;
+    registry.put("flipped", new Pixels(FlippedRaster.of(source, true, false)));
+    assertEquals(source.getSizeInBytes(), registry.getResidentBytes());
+    registry.put("other", image(new Pixels(20, 10).raster, 6));
+    assertEquals(1, registry.getSpills());
+
+    Pixels flipped = registry.get("flipped");
+    assertEquals(source.getRGB(19, 3), flipped.getRGB(0, 3));
+    assertEquals(flipped.raster.getSizeInBytes(), registry.getResidentBytes());
+    registry.remove("flipped");
+    assertEquals(0, registry.getResidentBytes());
+  }
+
+  @Test
+  public void removeReleasesMemory() {
+    ImageRegistry registry = new ImageRegistry(Long.MAX_VALUE);
+    registry.put("first", image(new Pixels(20, 10).raster, 1));
+    registry.remove("first");
+    assertFalse(registry.containsKey("first"));
+    assertTrue(registry.isEmpty());
+    assertEquals(0, registry.getResidentBytes());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidBudget() {
+    new ImageRegistry().setMemoryBudget(0);
+    System.setProperty("ime.registry.budget", "lots");
+    try {
+      new ImageRegistry();
+    } finally {
+      System.clearProperty("ime.registry.budget");
+    }
+  }
+
+  @Test
+  public void sessionsAreIsolated() throws InterruptedException {
+    String path = "test/testData/Test_Image.ppm";
+    List<Thread> threads = new ArrayList<>();
+    List<ImageManipulationsModel> models = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      ImageManipulationsModel model = new ImageManipulationsModelFactory(new ImageSession())
+              .getModel("ppm");
+      int increment = i % 2 == 0 ? -1 : 1;
+      models.add(model);
+      threads.add(new Thread(() -> {
+        try {
+          // Every session uses the same image names and reads the same file.
+          ImageUtil.readFile(new ByteArrayOutputStream(), path, "ppm");
+          model.loadImage(path, "img", new ByteArrayOutputStream());
+          for (int step = 0; step < 50; step++) {
+            model.brighten(increment, "img", "img");
+          }
+        } catch (Throwable e) {
+          synchronized (failures) {
+            failures.add(e);
+          }
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertTrue(failures.isEmpty());
+    for (int i = 0; i < models.size(); i++) {
+      // The top left pixel of the test image is pure red.
+      int expected = i % 2 == 0 ? Pixels.pack(205, 0, 0) : Pixels.pack(255, 50, 50);
+      assertEquals(expected, models.get(i).getImageNameProperties("img").getRGB(0, 0));
+    }
+  }
+}
@@ -2,17 +2,23 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import model.ImageManipulationsModel;
 import model.PPMImageManipulationsModel;
 import utility.ImageUtil;
+import utility.raster.Rasters;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -364,4 +370,209 @@ public class PPMImageManipulationsModelTest {
     String result_4 = obj.getImageProperties("Test_Dest_Image");
     assertEquals(expected_4, result_4);
   }
+
+  /**
+   * Test case to check that rgb split and combine give the same result on planar storage,
+   * where they share planes instead of copying pixels.
+   */
+  @Test
+  public void TestPlanarRGBSplitAndCombine() {
+    String expected = "2 2\n"
+            + "255\n"
+            + "76 76 76\n"
+            + "149 149 149\n"
+            + "29 29 29\n"
+            + "255 255 255\n";
+
+    Rasters.setDefaultBackend("planar");
+    try {
+      ImageUtil.readFile(out, getImagePath("/test/testData/Test_Image.ppm"),
+              "ppm");
+      obj.loadImage(getImagePath("/test/testData/Test_Image.ppm"), "Test_Image-planar", out);
+    } finally {
+      Rasters.setDefaultBackend("packed");
+    }
+
+    obj.rgbSplit("Test_Image-planar", "Test_Image-planar-red",
+            "Test_Image-planar-green",
+            "Test_Image-planar-blue");
+    obj.rgbCombine("Test_Image-planar-combine", "Test_Image-planar-red",
+            "Test_Image-planar-green",
+            "Test_Image-planar-blue");
+    assertEquals(expected, obj.getImageProperties("Test_Image-planar-combine"));
+    obj.rgbSplit("Test_Image", "Test_Image-packed-red",
+            "Test_Image-packed-green",
+            "Test_Image-packed-blue");
+    assertEquals(obj.getImageProperties("Test_Image-packed-red"),
+            obj.getImageProperties("Test_Image-planar-red"));
+  }
+
+  /**
+   * Test case to check that comments are skipped wherever they appear in a PPM file.
+   */
+  @Test
+  public void TestLoadImageWithComments() {
+    String ppm = "# leading comment\nP3 # magic\n2 # width\n2\n# before max\n255\n"
+            + "255 0 0 0 255 0 # end of row\n0 0 255#no space\n 255 255 255";
+    ImageUtil.setInputData("comments.ppm", new ByteArrayInputStream(ppm.getBytes()));
+    obj.loadImage("comments.ppm", "Test_Image-comments", out);
+    assertEquals(obj.getImageProperties("Test_Image"),
+            obj.getImageProperties("Test_Image-comments"));
+  }
+
+  /**
+   * Test case to check that values are scaled by the maximum value of a PPM file.
+   */
+  @Test
+  public void TestLoadImageWithMaxValue() {
+    String ppm = "P3\n2 1\n1023\n1023 0 512 2000 -4 4\n";
+    ImageUtil.setInputData("max.ppm", new ByteArrayInputStream(ppm.getBytes()));
+    obj.loadImage("max.ppm", "Test_Image-max", out);
+    assertEquals("2 1\n255\n255 0 128\n255 0 1\n", obj.getImageProperties("Test_Image-max"));
+  }
+
+  /**
+   * Test case to check that a truncated PPM file is rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void TestLoadTruncatedImage() {
+    String ppm = "P3\n2 2\n255\n255 0 0 0 255";
+    ImageUtil.setInputData("truncated.ppm", new ByteArrayInputStream(ppm.getBytes()));
+    obj.loadImage("truncated.ppm", "Test_Image-truncated", out);
+  }
+
+  /**
+   * Test case to check that a binary PPM file is saved and loaded back as expected.
+   */
+  @Test
+  public void TestBinaryRoundTrip() {
+    String str = getImagePath("/test/testData/Test_Image-binary.ppm");
+    Map<String, String> options = new HashMap<>();
+    options.put("binary", "true");
+    ImageUtil.setOptions(str, options);
+    try {
+      obj.saveImage(str, "Test_Image", out);
+      ImageUtil.writeFile("ppm", str, out);
+      assertEquals("P6\n2 2\n255\n".length() + 2 * 2 * 3, new File(str).length());
+
+      ImageUtil.readFile(out, str, "ppm");
+      obj.loadImage(str, "Test_Image-binary", out);
+      assertEquals(obj.getImageProperties("Test_Image"),
+              obj.getImageProperties("Test_Image-binary"));
+    } finally {
+      ImageUtil.setOptions(str, new HashMap<>());
+      new File(str).delete();
+    }
+  }
+
+  /**
+   * Test case to check that a PGM file holds the luma of the image.
+   */
+  @Test
+  public void TestSaveGreyImage() {
+    String str = getImagePath("/test/testData/Test_Image-grey.pgm");
+    try {
+      obj.saveImage(str, "Test_Image", out);
+      ImageUtil.writeFile("pgm", str, out);
+      ImageUtil.readFile(out, str, "pgm");
+      obj.loadImage(str, "Test_Image-grey", out);
+      obj.createGreyScale("luma-component", "Test_Image", "Test_Image-luma");
+      assertEquals(obj.getImageProperties("Test_Image-luma"),
+              obj.getImageProperties("Test_Image-grey"));
+    } finally {
+      new File(str).delete();
+    }
+  }
+
+  /**
+   * Test case to check that binary files with 16 bit samples are read from a stream.
+   */
+  @Test
+  public void TestLoadWideBinaryImage() {
+    byte[] header = "P6 1 1 65535\n".getBytes();
+    byte[] ppm = Arrays.copyOf(header, header.length + 6);
+    byte[] pixel = {(byte) 0xFF, (byte) 0xFF, 0, 0, (byte) 0x80, 0};
+    System.arraycopy(pixel, 0, ppm, header.length, pixel.length);
+    ImageUtil.setInputData("wide.ppm", new ByteArrayInputStream(ppm));
+    obj.loadImage("wide.ppm", "Test_Image-wide", out);
+    assertEquals("1 1\n255\n255 0 128\n", obj.getImageProperties("Test_Image-wide"));
+  }
+
+  /**
+   * Test case to check that only a region of a plain file is kept, at a reduced scale.
+   */
+  @Test
+  public void TestLoadPlainRegionAndScale() {
+    StringBuilder ppm = new StringBuilder("P3 5 4 255\n");
+    for (int i = 0; i < 20; i++) {
+      ppm.append(i).append(' ').append(i + 100).append(' ').append(i + 200).append('\n');
+    }
+    Map<String, String> options = new HashMap<>();
+    options.put("region", "1,1,4,3");
+    options.put("scale", "1/2");
+    ImageUtil.setOptions("part.ppm", options);
+    try {
+      ImageUtil.setInputData("part.ppm", new ByteArrayInputStream(ppm.toString().getBytes()));
+      obj.loadImage("part.ppm", "Test_Image-part", out);
+    } finally {
+      ImageUtil.setOptions("part.ppm", new HashMap<>());
+    }
+    assertEquals("2 2\n255\n6 106 206\n8 108 208\n16 116 216\n18 118 218\n",
+            obj.getImageProperties("Test_Image-part"));
+  }
+
+  /**
+   * Test case to check that only a region of a binary file is kept, at a reduced scale.
+   */
+  @Test
+  public void TestLoadBinaryRegionAndScale() {
+    String str = getImagePath("/test/testData/Test_Image-part.ppm");
+    Map<String, String> options = new HashMap<>();
+    options.put("binary", "true");
+    ImageUtil.setOptions(str, options);
+    try {
+      obj.saveImage(str, "Test_Image", out);
+      ImageUtil.writeFile("ppm", str, out);
+      options.clear();
+      options.put("region", "1,0,1,2");
+      options.put("scale", "1/2");
+      ImageUtil.setOptions(str, options);
+      ImageUtil.readFile(out, str, "ppm");
+      obj.loadImage(str, "Test_Image-part", out);
+      String image = obj.getImageProperties("Test_Image");
+      // The top right pixel of the image, which is the second pixel of its first row.
+      assertEquals("1 1\n255\n" + image.split("\n")[3] + "\n",
+              obj.getImageProperties("Test_Image-part"));
+    } finally {
+      ImageUtil.setOptions(str, new HashMap<>());
+      new File(str).delete();
+    }
+  }
+
+  /**
+   * Test case to check that a region outside the image is rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void TestLoadRegionOutsideImage() {
+    Map<String, String> options = new HashMap<>();
+    options.put("region", "1,1,2,2");
+    ImageUtil.setOptions(getImagePath("/test/testData/Test_Image.ppm"), options);
+    try {
+      ImageUtil.readFile(out, getImagePath("/test/testData/Test_Image.ppm"), "ppm");
+      obj.loadImage(getImagePath("/test/testData/Test_Image.ppm"), "Test_Image-outside", out);
+    } finally {
+      ImageUtil.setOptions(getImagePath("/test/testData/Test_Image.ppm"), new HashMap<>());
+    }
+  }
+
+  /**
+   * Test case to check that writing a file for an image that was never saved fails cleanly.
+   */
+  @Test
+  public void TestWriteUnsavedImage() {
+    String str = getImagePath("/test/testData/Test_Image-unsaved.ppm");
+    assertFalse(ImageUtil.writeFile("ppm", str, out));
+    assertEquals("File " + str + " not found!", out.toString());
+    assertFalse(new File(str).exists());
+  }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.ImageManipulationsModelFactory;
+import model.ImageSession;
+import model.NewImageManipulationsModel;
+import utility.ImageUtil;
+import utility.Pixels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests the loading and saving of images as QOI files.
+ */
+public class QOIImageManipulationsModelTest {
+
+  ImageManipulationsModelFactory factory;
+  NewImageManipulationsModel obj;
+  OutputStream out;
+  String path;
+
+  @Before
+  public void setup() {
+    out = new ByteArrayOutputStream();
+    factory = new ImageManipulationsModelFactory(new ImageSession());
+    NewImageManipulationsModel png = factory.getModel("png");
+    ImageUtil.readFile(out, getImagePath("/test/testData/manhattan-small.png"), "png");
+    png.loadImage(getImagePath("/test/testData/manhattan-small.png"), "manhattan-small", out);
+    obj = factory.getModel("qoi");
+    path = getImagePath("/test/testData/manhattan-small.qoi");
+  }
+
+  @After
+  public void cleanUp() {
+    new File(path).delete();
+  }
+
+  private String getImagePath(String path) {
+    return Paths.get("").toAbsolutePath() + path;
+  }
+
+  private void roundTrip(String imageName) {
+    obj.saveImage(path, imageName, out);
+    assertTrue(ImageUtil.writeFile("qoi", path, out));
+    ImageUtil.readFile(out, path, "qoi");
+    obj.loadImage(path, imageName + "-qoi", out);
+    assertEquals(obj.getImageProperties(imageName),
+            obj.getImageProperties(imageName + "-qoi"));
+  }
+
+  @Test
+  public void roundTripIsLossless() {
+    roundTrip("manhattan-small");
+  }
+
+  @Test
+  public void roundTripOfEveryOperation() {
+    // Runs longer than a single operation holds and crossing rows, wrapping differences,
+    // repeated colours, small differences and colours far apart.
+    StringBuilder ppm = new StringBuilder("P3 70 4 255\n");
+    for (int y = 0; y < 4; y++) {
+      for (int x = 0; x < 70; x++) {
+        if (y < 2) {
+          ppm.append("0 0 0\n");
+        } else if (y == 2) {
+          ppm.append(x % 2 == 0 ? "255 1 255\n" : "0 254 1\n");
+        } else {
+          ppm.append(x).append(' ').append(2 * x).append(' ').append(x * 37 % 256).append('\n');
+        }
+      }
+    }
+    ImageUtil.setInputData("operations.ppm", new ByteArrayInputStream(ppm.toString().getBytes()));
+    factory.getModel("ppm").loadImage("operations.ppm", "operations", out);
+    roundTrip("operations");
+  }
+
+  @Test
+  public void runCarriedIntoNoisyRow() {
+    // The run of black from the first row ends at the first pixel of the second row, where every
+    // pixel is written out in full.
+    ImageUtil.setInputData("run.ppm", new ByteArrayInputStream("P3 1 2 255\n0 0 0\n128 64 32\n"
+            .getBytes()));
+    factory.getModel("ppm").loadImage("run.ppm", "run", out);
+    roundTrip("run");
+
+    ImageUtil.setInputData("run-wide.ppm", new ByteArrayInputStream(("P3 3 2 255\n"
+            + "0 0 0\n0 0 0\n0 0 0\n128 64 32\n0 200 17\n250 3 99\n").getBytes()));
+    factory.getModel("ppm").loadImage("run-wide.ppm", "run-wide", out);
+    roundTrip("run-wide");
+  }
+
+  @Test
+  public void loadFourChannelFile() {
+    byte[] qoi = {'q', 'o', 'i', 'f', 0, 0, 0, 2, 0, 0, 0, 1, 4, 0,
+        (byte) 0xFF, 10, 20, 30, 0, (byte) 0xFE, 11, 21, 31,
+        0, 0, 0, 0, 0, 0, 0, 1};
+    ImageUtil.setInputData("alpha.qoi", new ByteArrayInputStream(qoi));
+    obj.loadImage("alpha.qoi", "alpha", out);
+    assertEquals("2 1\n255\n10 20 30\n11 21 31\n", obj.getImageProperties("alpha"));
+  }
+
+  @Test
+  public void loadRegionAndScale() {
+    obj.saveImage(path, "manhattan-small", out);
+    ImageUtil.writeFile("qoi", path, out);
+    Map<String, String> options = new HashMap<>();
+    options.put("region", "7,2,30,20");
+    options.put("scale", "1/5");
+    ImageUtil.setOptions(path, options);
+    try {
+      ImageUtil.readFile(out, path, "qoi");
+      obj.loadImage(path, "manhattan-part", out);
+    } finally {
+      ImageUtil.setOptions(path, new HashMap<>());
+    }
+    Pixels image = obj.getImageNameProperties("manhattan-small");
+    Pixels part = obj.getImageNameProperties("manhattan-part");
+    assertEquals(6, part.width);
+    assertEquals(4, part.height);
+    for (int y = 0; y < part.height; y++) {
+      for (int x = 0; x < part.width; x++) {
+        assertEquals(image.getRGB(7 + 5 * x, 2 + 5 * y), part.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void truncatedFile() {
+    byte[] qoi = {'q', 'o', 'i', 'f', 0, 0, 0, 2, 0, 0, 0, 2, 3, 0, (byte) 0xFE, 1, 2};
+    ImageUtil.setInputData("truncated.qoi", new ByteArrayInputStream(qoi));
+    obj.loadImage("truncated.qoi", "truncated", out);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidFile() {
+    ImageUtil.setInputData("invalid.qoi", new ByteArrayInputStream("P3 1 1 255".getBytes()));
+    obj.loadImage("invalid.qoi", "invalid", out);
+  }
+}
@@ -0,0 +1,221 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import utility.raster.FlippedRaster;
+import utility.raster.OffHeapRaster;
+import utility.raster.PackedRaster;
+import utility.raster.PlanarRaster;
+import utility.raster.Raster;
+import utility.raster.Rasters;
+import utility.raster.TiledRaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests the raster backends that hold the pixels of an image.
+ */
+public class RasterTest {
+
+  // Fills a raster with a value that is unique for every pixel.
+  private void fill(Raster raster) {
+    for (int y = 0; y < raster.getHeight(); y++) {
+      for (int x = 0; x < raster.getWidth(); x++) {
+        raster.setRGB(x, y, (x * 7 + y * 131) & 0xFFFFFF);
+      }
+    }
+  }
+
+  private void checkFilled(Raster raster) {
+    for (int y = 0; y < raster.getHeight(); y++) {
+      for (int x = 0; x < raster.getWidth(); x++) {
+        assertEquals((x * 7 + y * 131) & 0xFFFFFF, raster.getRGB(x, y));
+      }
+    }
+  }
+
+  // Checks the bulk accessors of a backend against its single pixel accessors.
+  private void checkBackend(Raster raster) {
+    fill(raster);
+    checkFilled(raster);
+
+    int[] row = new int[raster.getWidth() + 2];
+    raster.getRow(3, row, 2);
+    for (int x = 0; x < raster.getWidth(); x++) {
+      assertEquals(raster.getRGB(x, 3), row[x + 2]);
+    }
+
+    int[] region = new int[4 * 10];
+    raster.getPixels(2, 1, 3, 4, region, 1, 10);
+    for (int r = 0; r < 4; r++) {
+      for (int c = 0; c < 3; c++) {
+        assertEquals(raster.getRGB(2 + c, 1 + r), region[1 + r * 10 + c]);
+      }
+    }
+
+    Raster copy = raster.copy();
+    assertNotSame(raster, copy);
+    checkFilled(copy);
+
+    copy.setPixels(2, 1, 3, 4, new int[4 * 10], 1, 10);
+    assertEquals(0, copy.getRGB(3, 2));
+    checkFilled(raster);
+
+    copy.setRow(0, row, 2);
+    assertEquals(raster.getRGB(5, 3), copy.getRGB(5, 0));
+  }
+
+  @Test
+  public void packedBackend() {
+    checkBackend(new PackedRaster(9, 6));
+  }
+
+  @Test
+  public void planarBackend() {
+    checkBackend(new PlanarRaster(9, 6));
+  }
+
+  @Test
+  public void sharedPlanesAreCopiedOnWrite() {
+    PlanarRaster source = new PlanarRaster(4, 3);
+    fill(source);
+    PlanarRaster combined = new PlanarRaster(4, 3, source.sharePlane(PlanarRaster.RED),
+            source.sharePlane(PlanarRaster.GREEN), source.sharePlane(PlanarRaster.BLUE));
+    assertSame(source.getPlane(PlanarRaster.GREEN), combined.getPlane(PlanarRaster.GREEN));
+
+    combined.setRGB(1, 1, 0);
+    assertNotSame(source.getPlane(PlanarRaster.GREEN), combined.getPlane(PlanarRaster.GREEN));
+    assertEquals(0, combined.getRGB(1, 1));
+    checkFilled(source);
+  }
+
+  @Test
+  public void sharedPlanesAreCopiedOnceByConcurrentWriters() throws Exception {
+    for (int round = 0; round < 50; round++) {
+      PlanarRaster source = new PlanarRaster(64, 8);
+      fill(source);
+      Raster copy = source.copy();
+      // Every thread writes its own row of the copy, all starting at once.
+      CountDownLatch start = new CountDownLatch(1);
+      ExecutorService threads = Executors.newFixedThreadPool(8);
+      List<Future<?>> writes = new ArrayList<>();
+      for (int y = 0; y < 8; y++) {
+        int row = y;
+        writes.add(threads.submit(() -> {
+          start.await();
+          int[] pixels = new int[64];
+          Arrays.fill(pixels, 0x010203 * (row + 1));
+          copy.setPixels(0, row, 64, 1, pixels, 0, 64);
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> write : writes) {
+        write.get();
+      }
+      threads.shutdown();
+
+      for (int y = 0; y < 8; y++) {
+        for (int x = 0; x < 64; x++) {
+          assertEquals(0x010203 * (y + 1), copy.getRGB(x, y));
+        }
+      }
+      checkFilled(source);
+    }
+  }
+
+  @Test
+  public void offHeapBackend() {
+    checkBackend(new OffHeapRaster(9, 6));
+  }
+
+  @Test
+  public void offHeapRowsCrossingChunks() {
+    // Chunks of 8 pixels, so that most rows of a 9 pixel wide raster span two chunks.
+    checkBackend(new OffHeapRaster(9, 6, 3));
+  }
+
+  @Test
+  public void tiledBackend() {
+    // Tiles of 4x4 pixels, leaving partial tiles on the right and bottom edges.
+    checkBackend(new TiledRaster(9, 6, 4));
+  }
+
+  @Test
+  public void tilesAreAllocatedOnFirstWrite() {
+    TiledRaster raster = new TiledRaster(8, 8, 4);
+    assertEquals(0, raster.getSizeInBytes());
+
+    raster.setPixels(0, 0, 8, 4, new int[32], 0, 8);
+    assertEquals(0, raster.getSizeInBytes());
+
+    raster.setRGB(5, 6, 0x102030);
+    assertTrue(raster.isTileAllocated(1, 1));
+    assertFalse(raster.isTileAllocated(0, 1));
+    assertEquals(4 * 4 * 4, raster.getSizeInBytes());
+    assertEquals(0x102030, raster.getRGB(5, 6));
+    assertEquals(0, raster.getRGB(1, 6));
+  }
+
+  @Test
+  public void flippedViewRemapsReads() {
+    Raster source = new PackedRaster(5, 3);
+    fill(source);
+    FlippedRaster both = FlippedRaster.of(FlippedRaster.of(source, true, false), false, true);
+    int[] row = new int[3];
+    both.getPixels(1, 0, 3, 1, row, 0, 3);
+    for (int x = 0; x < 3; x++) {
+      assertEquals(source.getRGB(3 - x, 2), row[x]);
+      assertEquals(source.getRGB(4 - x, 2 - 1), both.getRGB(x, 1));
+    }
+
+    FlippedRaster back = FlippedRaster.of(both, true, true);
+    checkFilled(back);
+    assertFalse(back.isMaterialized());
+  }
+
+  @Test
+  public void flippedViewIsMaterializedOnWrite() {
+    Raster source = new PackedRaster(5, 3);
+    fill(source);
+    FlippedRaster view = FlippedRaster.of(source, true, false);
+    view.setRGB(0, 0, 0);
+    assertTrue(view.isMaterialized());
+    assertEquals(0, view.getRGB(0, 0));
+    assertEquals(source.getRGB(3, 0), view.getRGB(1, 0));
+    checkFilled(source);
+    checkBackend(FlippedRaster.of(new PackedRaster(9, 6), false, true));
+  }
+
+  @Test
+  public void flippedViewHoldsTheSizeOfItsSource() {
+    Raster source = new PackedRaster(5, 3);
+    FlippedRaster view = FlippedRaster.of(source, false, true);
+    assertEquals(5 * 3 * 4, view.getSizeInBytes());
+    view.setRGB(0, 0, 0x010203);
+    assertEquals(5 * 3 * 4, view.getSizeInBytes());
+    assertEquals(0x010203, view.getRGB(0, 0));
+    assertEquals(PackedRaster.class, view.createCompatible(2, 2).getClass());
+  }
+
+  @Test
+  public void defaultBackendIsPacked() {
+    assertEquals("packed", Rasters.getDefaultBackend().getName());
+    assertEquals(PackedRaster.class, Rasters.create(2, 2).getClass());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownBackend() {
+    Rasters.setDefaultBackend("no-such-backend");
+  }
+}